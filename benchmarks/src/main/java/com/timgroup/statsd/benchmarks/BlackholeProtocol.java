@@ -0,0 +1,30 @@
+package com.timgroup.statsd.benchmarks;
+
+import com.timgroup.statsd.Protocol;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A {@link Protocol} which hands every message to a JMH {@link Blackhole}, so that benchmarks
+ * only measure the formatting done by the client while preventing the JIT from eliminating it.
+ */
+final class BlackholeProtocol implements Protocol {
+
+    private final Blackhole blackhole;
+
+    BlackholeProtocol(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void send(String message) {
+        blackhole.consume(message);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,67 @@
+package com.timgroup.statsd.benchmarks;
+
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientBuilder;
+import com.timgroup.statsd.StatsDClientMXBean;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The client implementations compared by the benchmarks and the loss harness.
+ */
+public enum ClientType {
+    NON_BLOCKING {
+        @Override
+        StatsDClient build(StatsDClientBuilder builder, int queueSize) {
+            return builder.buildNonBlocking(queueSize);
+        }
+    },
+    CONCURRENT {
+        @Override
+        StatsDClient build(StatsDClientBuilder builder, int queueSize) {
+            return builder.buildConcurrent(1);
+        }
+    },
+    BLOCKING {
+        @Override
+        StatsDClient build(StatsDClientBuilder builder, int queueSize) {
+            return builder.buildBlocking(false);
+        }
+
+        @Override
+        boolean needsLockOverUdp() {
+            return true;
+        }
+    };
+
+    /**
+     * Build a client of this type.
+     *
+     * @param queueSize the queue size, for the clients having a bounded queue.
+     */
+    abstract StatsDClient build(StatsDClientBuilder builder, int queueSize);
+
+    /**
+     * @return true if callers must synchronize on the client when it uses the UDP protocol, which
+     * is not thread-safe.
+     */
+    boolean needsLockOverUdp() {
+        return false;
+    }
+
+    /**
+     * Look up the MXBean of a client built with {@link StatsDClientBuilder#jmx()}.
+     *
+     * @param prefix the unique prefix of the client
+     */
+    static StatsDClientMXBean monitor(String prefix) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = server.queryNames(new ObjectName(
+            "com.timgroup.statsd:type=StatsDClient,prefix=" + ObjectName.quote(prefix) + ",*"),
+            null).iterator().next();
+        return JMX.newMXBeanProxy(server, name, StatsDClientMXBean.class);
+    }
+}
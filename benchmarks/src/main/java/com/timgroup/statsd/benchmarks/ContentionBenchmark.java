@@ -0,0 +1,139 @@
+package com.timgroup.statsd.benchmarks;
+
+import com.timgroup.statsd.Protocol;
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientBuilder;
+import com.timgroup.statsd.StatsDClientMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Caller-side cost of each client implementation when many threads emit metrics at the same
+ * time. Run it through {@link ContentionSuite} to get latency percentiles and throughput at 1, 4,
+ * 16 and 64 producer threads.
+ *
+ * <p>The {@code MEMORY} sink isolates the client (queue handoff and IO thread) from the network,
+ * the {@code UDP} sink sends real datagrams to a {@link LoopbackAgent}. At the end of each
+ * trial, the number of metrics sent, dropped by the client and received is printed; on loopback,
+ * the difference between the metrics the client sent and the ones received is the kernel drop.</p>
+ *
+ * <p>The {@link com.timgroup.statsd.BlockingStatsDClient} sending over UDP is synchronized on the
+ * client, since its UDP protocol is not thread-safe: this is what an application sharing it
+ * between threads has to do. A {@link com.timgroup.statsd.ConcurrentStatsDClient} has an
+ * unbounded queue: when the producers outpace the IO thread its memory grows until the trial
+ * ends, hence the large heap.</p>
+ */
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    public enum Sink {
+        MEMORY, UDP
+    }
+
+    @Param
+    public ClientType client;
+
+    @Param
+    public Sink sink;
+
+    @Param({"100000"})
+    public int queueSize;
+
+    private StatsDClient statsd;
+    private StatsDClientMXBean monitor;
+    private LoopbackAgent agent;
+    private boolean synchronize;
+
+    @Setup
+    public void setup() throws Exception {
+        final String prefix = "contention" + TRIALS.incrementAndGet();
+        final StatsDClientBuilder builder = new StatsDClientBuilder().prefix(prefix).jmx();
+        if (sink == Sink.UDP) {
+            agent = new LoopbackAgent(0);
+            builder.hostname("127.0.0.1").port(agent.getPort()).udpProtocol();
+        } else {
+            builder.customProtocol(new MemorySink());
+        }
+        statsd = client.build(builder, queueSize);
+        synchronize = sink == Sink.UDP && client.needsLockOverUdp();
+        monitor = ClientType.monitor(prefix);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        final long metrics = monitor.getMetrics();
+        final long dropped = monitor.getMetricsDroppedQueueFull()
+            + monitor.getMetricsDroppedSendError();
+        statsd.stop();
+        final StringBuilder report = new StringBuilder()
+            .append(String.format("%n[%s/%s] sent %d, dropped by client %d (%.3f%%)",
+                client, sink, metrics, dropped, percent(dropped, metrics)));
+        if (agent != null) {
+            agent.awaitQuiet(200);
+            final long received = agent.getLines();
+            final long lost = metrics - dropped - received;
+            report.append(String.format(", received %d, lost in transit %d (%.3f%%)",
+                received, lost, percent(lost, metrics)));
+            agent.close();
+        }
+        System.out.println(report);
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    @Benchmark
+    public void count() {
+        if (synchronize) {
+            synchronized (statsd) {
+                statsd.count("contention.count", 42L, "thread:any");
+            }
+        } else {
+            statsd.count("contention.count", 42L, "thread:any");
+        }
+    }
+
+    /**
+     * In-memory sink keeping a reference on the last message, so that the JIT cannot eliminate
+     * its formatting. Racy on purpose: with a {@link com.timgroup.statsd.BlockingStatsDClient} it
+     * is called by all the producer threads.
+     */
+    static final class MemorySink implements Protocol {
+
+        private String last;
+
+        @Override
+        public void send(String message) {
+            last = message;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            last = null;
+        }
+    }
+}
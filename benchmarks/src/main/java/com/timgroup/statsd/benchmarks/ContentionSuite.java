@@ -0,0 +1,31 @@
+package com.timgroup.statsd.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link ContentionBenchmark} for every client and sink at 1, 4, 16 and 64 producer
+ * threads. Extra JMH options can be given on the command line, e.g. {@code -rf csv -rff
+ * contention.csv} to keep the results.
+ *
+ * <pre>java -cp target/benchmarks.jar com.timgroup.statsd.benchmarks.ContentionSuite</pre>
+ */
+public final class ContentionSuite {
+
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    private ContentionSuite() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : THREADS) {
+            new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .include(ContentionBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build()).run();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.timgroup.statsd.benchmarks;
+
+import com.timgroup.statsd.Event;
+import com.timgroup.statsd.ServiceCheck;
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientBuilder;
+import com.timgroup.statsd.Timer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of formatting each kind of metric, measured on a {@link
+ * com.timgroup.statsd.BlockingStatsDClient} without autoflush writing to a {@link
+ * BlackholeProtocol}: the caller thread does all the work and no IO is involved.
+ *
+ * <p>Run with the GC profiler (the default of {@link BenchmarkMain}) and look at {@code
+ * gc.alloc.rate.norm} to get the bytes allocated per metric.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormattingBenchmark {
+
+    private static final String[][] TAGS = {
+        {},
+        {"env:prod"},
+        {"env:prod", "service:checkout", "region:us-east-1", "shard:3", "version:2.6"},
+    };
+
+    @Param({"0", "1", "5"})
+    public int tagCount;
+
+    @Param({"false", "true"})
+    public boolean constantTags;
+
+    private StatsDClient client;
+    private StatsDClient suppressingClient;
+    private String[] tags;
+    private Event event;
+    private ServiceCheck serviceCheck;
+    private Timer timer;
+    // Fields rather than constants so that the JIT cannot fold the formatting.
+    private long longValue = 4242L;
+    private double doubleValue = 42.4242;
+    private double sampleRate = 1.0;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        final StatsDClientBuilder builder = new StatsDClientBuilder()
+            .prefix("my.prefix")
+            .customProtocol(new BlackholeProtocol(blackhole));
+        if (constantTags) {
+            builder.constantTags("host:benchmark", "team:metrics");
+        }
+        client = builder.buildBlocking(false);
+        suppressingClient = builder.gaugeHeartbeat(TimeUnit.HOURS.toMillis(1)).buildBlocking(false);
+        tags = tagCount == 0 ? TAGS[0] : tagCount == 1 ? TAGS[1] : TAGS[2];
+        timer = client.timer("my.timer", tags);
+        event = Event.builder()
+            .withTitle("Deployment")
+            .withText("Version 2.6 deployed\non all hosts")
+            .withAggregationKey("deploy")
+            .withAlertType(Event.AlertType.INFO)
+            .build();
+        serviceCheck = ServiceCheck.builder()
+            .withName("my.service.check")
+            .withStatus(ServiceCheck.Status.OK)
+            .withMessage("all good")
+            .withTags(tags)
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.stop();
+        suppressingClient.stop();
+    }
+
+    @Benchmark
+    public void countLong() {
+        client.count("my.counter", longValue, tags);
+    }
+
+    @Benchmark
+    public void countLongSampled() {
+        client.count("my.counter", longValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void countDouble() {
+        client.count("my.counter", doubleValue, tags);
+    }
+
+    @Benchmark
+    public void countDoubleSampled() {
+        client.count("my.counter", doubleValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        client.incrementCounter("my.counter", tags);
+    }
+
+    @Benchmark
+    public void gaugeLong() {
+        client.recordGaugeValue("my.gauge", longValue, tags);
+    }
+
+    @Benchmark
+    public void gaugeLongSampled() {
+        client.recordGaugeValue("my.gauge", longValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void gaugeLongUnchanged() {
+        // Only the first call is sent: this measures the suppressed path.
+        suppressingClient.recordGaugeValue("my.gauge", longValue, tags);
+    }
+
+    @Benchmark
+    public void gaugeDouble() {
+        client.recordGaugeValue("my.gauge", doubleValue, tags);
+    }
+
+    @Benchmark
+    public void gaugeDoubleSampled() {
+        client.recordGaugeValue("my.gauge", doubleValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void executionTime() {
+        client.recordExecutionTime("my.timer", longValue, tags);
+    }
+
+    @Benchmark
+    public void executionTimeSampled() {
+        client.recordExecutionTime("my.timer", longValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void executionTimeDouble() {
+        client.recordExecutionTime("my.timer", doubleValue, tags);
+    }
+
+    @Benchmark
+    public void timerStartStop() {
+        timer.stop(timer.start());
+    }
+
+    @Benchmark
+    public void timerSample() {
+        try (Timer.Sample sample = timer.time()) {
+            // The sample should be scalar-replaced: compare gc.alloc.rate.norm with timerStartStop.
+        }
+    }
+
+    @Benchmark
+    public void histogramLong() {
+        client.recordHistogramValue("my.histogram", longValue, tags);
+    }
+
+    @Benchmark
+    public void histogramLongSampled() {
+        client.recordHistogramValue("my.histogram", longValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void histogramDouble() {
+        client.recordHistogramValue("my.histogram", doubleValue, tags);
+    }
+
+    @Benchmark
+    public void histogramDoubleSampled() {
+        client.recordHistogramValue("my.histogram", doubleValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void distributionLong() {
+        client.recordDistributionValue("my.distribution", longValue, tags);
+    }
+
+    @Benchmark
+    public void distributionLongSampled() {
+        client.recordDistributionValue("my.distribution", longValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void distributionDouble() {
+        client.recordDistributionValue("my.distribution", doubleValue, tags);
+    }
+
+    @Benchmark
+    public void distributionDoubleSampled() {
+        client.recordDistributionValue("my.distribution", doubleValue, sampleRate, tags);
+    }
+
+    @Benchmark
+    public void setValue() {
+        client.recordSetValue("my.set", "user-4242", tags);
+    }
+
+    @Benchmark
+    public void event() {
+        client.recordEvent(event, tags);
+    }
+
+    @Benchmark
+    public void serviceCheck() {
+        client.recordServiceCheckRun(serviceCheck);
+    }
+}
@@ -0,0 +1,306 @@
+package com.timgroup.statsd.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the DogStatsD agent, fast enough to tell the real loss rate of a client on
+ * loopback.
+ *
+ * <p>Packets are received on a single thread into one reused direct buffer, and parsed in place:
+ * lines are never turned into strings. Each line is counted per metric name and type in an
+ * open-addressing table which only allocates the first time a metric is seen.</p>
+ *
+ * <p>The totals can be read at any time; the per-metric counts should only be read once the
+ * traffic stopped.</p>
+ */
+final class LoopbackAgent implements Closeable {
+
+    /**
+     * The types of lines understood by the agent.
+     */
+    enum LineType {
+        COUNTER, GAUGE, TIMER, HISTOGRAM, DISTRIBUTION, SET, EVENT, SERVICE_CHECK, UNKNOWN
+    }
+
+    private static final int MAX_PACKET_SIZE = 64 * 1024;
+
+    private final DatagramChannel channel;
+    private final Thread thread;
+
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong values = new AtomicLong();
+    private final AtomicLong[] linesByType = new AtomicLong[LineType.values().length];
+
+    // Open-addressing table of (metric name, type) -> line count. Only touched by the receiver.
+    private byte[][] names = new byte[1024][];
+    private int[] hashes = new int[1024];
+    private LineType[] types = new LineType[1024];
+    private long[] counts = new long[1024];
+    private int size;
+
+    /**
+     * Start an agent listening on the given loopback port.
+     *
+     * @param port the port to bind, 0 to pick an ephemeral one.
+     */
+    LoopbackAgent(int port) throws IOException {
+        for (int i = 0; i < linesByType.length; i++) {
+            linesByType[i] = new AtomicLong();
+        }
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 8 * 1024 * 1024);
+        channel.bind(new InetSocketAddress("127.0.0.1", port));
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "loopback-agent");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    long getPackets() {
+        return packets.get();
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of lines received, i.e. metrics, events and service checks.
+     */
+    long getLines() {
+        return lines.get();
+    }
+
+    /**
+     * @return the number of values received; larger than {@link #getLines()} when lines pack
+     * several values.
+     */
+    long getValues() {
+        return values.get();
+    }
+
+    long getLines(LineType type) {
+        return linesByType[type.ordinal()].get();
+    }
+
+    /**
+     * @return the number of lines received for each metric, keyed by {@code name|type}.
+     */
+    Map<String, Long> getLinesByMetric() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null) {
+                result.put(new String(names[i], StandardCharsets.UTF_8) + '|' + types[i], counts[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wait until no packet has been received for the given time.
+     */
+    void awaitQuiet(long quietMillis) throws InterruptedException {
+        long last = -1;
+        while (last != packets.get()) {
+            last = packets.get();
+            Thread.sleep(quietMillis);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    parsePacket(buffer);
+                }
+            } catch (IOException e) {
+                // Closed, or transient error: the loop condition decides.
+            }
+        }
+    }
+
+    // All the counters below have a single writer, the receiver thread: lazySet is enough.
+
+    private void parsePacket(ByteBuffer buffer) {
+        packets.lazySet(packets.get() + 1);
+        bytes.lazySet(bytes.get() + buffer.remaining());
+        final int limit = buffer.limit();
+        int start = buffer.position();
+        for (int i = start; i <= limit; i++) {
+            if (i == limit || buffer.get(i) == '\n') {
+                if (i > start) {
+                    parseLine(buffer, start, i);
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+        final LineType type;
+        int nameEnd;
+        int lineValues = 1;
+        if (startsWith(buffer, start, end, "_e{")) {
+            type = LineType.EVENT;
+            nameEnd = start + 2;
+        } else if (startsWith(buffer, start, end, "_sc|")) {
+            type = LineType.SERVICE_CHECK;
+            start += 4;
+            nameEnd = indexOf(buffer, start, end, '|');
+        } else {
+            nameEnd = indexOf(buffer, start, end, ':');
+            final int typeStart = indexOf(buffer, nameEnd, end, '|') + 1;
+            for (int i = nameEnd + 1; i < typeStart; i++) {
+                if (buffer.get(i) == ':') {
+                    lineValues++;
+                }
+            }
+            type = metricType(buffer, typeStart, indexOf(buffer, typeStart, end, '|'));
+        }
+        lines.lazySet(lines.get() + 1);
+        values.lazySet(values.get() + lineValues);
+        final AtomicLong byType = linesByType[type.ordinal()];
+        byType.lazySet(byType.get() + 1);
+        count(buffer, start, nameEnd, type);
+    }
+
+    private static LineType metricType(ByteBuffer buffer, int start, int end) {
+        if (end - start == 1) {
+            switch (buffer.get(start)) {
+                case 'c':
+                    return LineType.COUNTER;
+                case 'g':
+                    return LineType.GAUGE;
+                case 'h':
+                    return LineType.HISTOGRAM;
+                case 'd':
+                    return LineType.DISTRIBUTION;
+                case 's':
+                    return LineType.SET;
+                default:
+                    return LineType.UNKNOWN;
+            }
+        }
+        if (end - start == 2 && buffer.get(start) == 'm' && buffer.get(start + 1) == 's') {
+            return LineType.TIMER;
+        }
+        return LineType.UNKNOWN;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the first {@code b} in {@code [start, end)}, or {@code end}.
+     */
+    private static int indexOf(ByteBuffer buffer, int start, int end, char b) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private void count(ByteBuffer buffer, int start, int end, LineType type) {
+        int hash = type.ordinal();
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = names.length - 1;
+        int index = hash & mask;
+        while (names[index] != null) {
+            if (hashes[index] == hash && types[index] == type
+                && equals(names[index], buffer, start, end)) {
+                counts[index]++;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        final byte[] name = new byte[end - start];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(start + i);
+        }
+        names[index] = name;
+        hashes[index] = hash;
+        types[index] = type;
+        counts[index] = 1;
+        if (++size * 2 > names.length) {
+            grow();
+        }
+    }
+
+    private static boolean equals(byte[] name, ByteBuffer buffer, int start, int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        final byte[][] oldNames = names;
+        final int[] oldHashes = hashes;
+        final LineType[] oldTypes = types;
+        final long[] oldCounts = counts;
+        final int capacity = oldNames.length * 2;
+        final int mask = capacity - 1;
+        names = new byte[capacity][];
+        hashes = new int[capacity];
+        types = new LineType[capacity];
+        counts = new long[capacity];
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (names[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                names[index] = oldNames[i];
+                hashes[index] = oldHashes[i];
+                types[index] = oldTypes[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.timgroup.statsd.benchmarks;
+
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientBuilder;
+import com.timgroup.statsd.StatsDClientMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end loss and throughput of each client implementation: producer threads emit metrics at
+ * a fixed target rate to a {@link LoopbackAgent}, and the number of metrics sent is compared to
+ * the number actually received.
+ *
+ * <p>Unlike the JMH benchmarks, which measure how fast the callers can go, this tells which
+ * client keeps up with a given production rate, and where the metrics are lost: dropped by the
+ * client (queue full or send errors) or in transit (socket buffers).</p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.timgroup.statsd.benchmarks.LossHarness \
+ *     [metrics per second] [seconds] [threads] [queue size]
+ * </pre>
+ */
+public final class LossHarness {
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    // Number of metrics sent between two checks of the schedule.
+    private static final int BATCH = 64;
+
+    private LossHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final long rate = args.length > 0 ? Long.parseLong(args[0]) : 200000;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        final int queueSize = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+        System.out.printf("Target %,d metrics/s for %ds on %d threads, queue size %d%n%n",
+            rate, seconds, threads, queueSize);
+        System.out.printf("%-13s %12s %12s %12s %12s %10s %12s %8s%n", "client", "attempted",
+            "client drop", "received", "rate/s", "packets/s", "metrics/pkt", "loss %");
+        for (ClientType type : ClientType.values()) {
+            run(type, rate, seconds, threads, queueSize);
+        }
+    }
+
+    private static void run(ClientType type, long rate, int seconds, int threads, int queueSize)
+        throws Exception {
+        try (LoopbackAgent agent = new LoopbackAgent(0)) {
+            final String prefix = "loss" + RUNS.incrementAndGet();
+            final StatsDClient client = type.build(new StatsDClientBuilder()
+                .prefix(prefix)
+                .hostname("127.0.0.1")
+                .port(agent.getPort())
+                .udpProtocol()
+                .jmx(), queueSize);
+            final StatsDClientMXBean monitor = ClientType.monitor(prefix);
+            final Producer[] producers = new Producer[threads];
+            final CountDownLatch done = new CountDownLatch(threads);
+            final long start = System.nanoTime();
+            final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            for (int i = 0; i < threads; i++) {
+                producers[i] = new Producer(client, type.needsLockOverUdp(), rate / threads,
+                    start, end, done);
+                final Thread thread = new Thread(producers[i], "producer-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            done.await();
+            final long elapsed = System.nanoTime() - start;
+            final long dropped = monitor.getMetricsDroppedQueueFull()
+                + monitor.getMetricsDroppedSendError();
+            client.stop();
+            agent.awaitQuiet(200);
+
+            long attempted = 0;
+            for (Producer producer : producers) {
+                attempted += producer.sent;
+            }
+            final long received = agent.getLines();
+            final double elapsedSeconds = elapsed / 1e9;
+            System.out.printf("%-13s %,12d %,12d %,12d %,12.0f %,10.0f %12.1f %8.3f%n", type,
+                attempted, dropped, received, received / elapsedSeconds,
+                agent.getPackets() / elapsedSeconds,
+                agent.getPackets() == 0 ? 0 : (double) received / agent.getPackets(),
+                attempted == 0 ? 0 : 100.0 * (attempted - received) / attempted);
+            if (agent.getLinesByMetric().size() != 1) {
+                System.out.println("  unexpected metrics received: " + agent.getLinesByMetric());
+            }
+        }
+    }
+
+    /**
+     * Emits metrics at a fixed rate, in small batches, parking when ahead of schedule. A producer
+     * which cannot keep up does not try to catch up: the client is then the bottleneck, which
+     * shows as an achieved rate lower than the target.
+     */
+    private static final class Producer implements Runnable {
+
+        private final StatsDClient client;
+        private final boolean synchronize;
+        private final long nanosPerBatch;
+        private final long start;
+        private final long end;
+        private final CountDownLatch done;
+        private volatile long sent;
+
+        Producer(StatsDClient client, boolean synchronize, long rate, long start, long end,
+            CountDownLatch done) {
+            this.client = client;
+            this.synchronize = synchronize;
+            this.nanosPerBatch = TimeUnit.SECONDS.toNanos(BATCH) / Math.max(1, rate);
+            this.start = start;
+            this.end = end;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long next = start;
+                long count = 0;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    if (now < next) {
+                        LockSupport.parkNanos(next - now);
+                        continue;
+                    }
+                    for (int i = 0; i < BATCH; i++) {
+                        if (synchronize) {
+                            synchronized (client) {
+                                client.count("loss.count", 1L, "harness:loss");
+                            }
+                        } else {
+                            client.count("loss.count", 1L, "harness:loss");
+                        }
+                    }
+                    count += BATCH;
+                    next = Math.max(next + nanosPerBatch, now - nanosPerBatch);
+                }
+                sent = count;
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -1,17 +1,34 @@
 package com.timgroup.statsd;
 
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
 
 /**
  * An abstract class for implementation of StatsDClient which use a background IO Thread.
  *
+ * <p>The service checks and the events are queued in their own bounded lanes, apart from the
+ * metrics queue of the subclass, so that a flood of metrics cannot drop them. The IO Thread drains
+ * the lanes by weighted priority: in each round, up to {@code 16} service checks, then up to {@code
+ * 8} events, then up to {@code 64} metrics.</p>
+ *
  * @author Pascal Gélinas
  */
 public abstract class BackgroundStatsDClient extends DefaultStatsDClient {
 
+    /**
+     * Maximum time, in millis, the background IO Thread waits for a message before checking its
+     * state again.
+     */
+    private static final long MAX_WAIT_MILLIS = 1000;
+
     /**
      * The background IO Thread executor for subclasses to use.
      */
@@ -28,21 +45,300 @@ public abstract class BackgroundStatsDClient extends DefaultStatsDClient {
             }
         });
 
+    /**
+     * Minimum time, in millis, between two flushes of the IO Buffer once the queue is drained. 0
+     * means the buffer is flushed as soon as the queue is empty.
+     */
+    private volatile long flushInterval;
+    private volatile boolean flushRequested;
+    private QueueConsumer consumer;
+
+    private final BlockingQueue<String> serviceChecks =
+        new LinkedBlockingQueue<>(Lane.PRIORITY_CAPACITY);
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>(Lane.PRIORITY_CAPACITY);
+
     public BackgroundStatsDClient(String prefix, String[] constantTags,
         StatsDClientErrorHandler errorHandler) {
-        super(prefix, constantTags, errorHandler);
+        this(prefix, constantTags, errorHandler, Telemetry.DISABLED);
+    }
+
+    BackgroundStatsDClient(String prefix, String[] constantTags,
+        StatsDClientErrorHandler errorHandler, Telemetry telemetry) {
+        super(prefix, constantTags, errorHandler, telemetry);
     }
 
     /**
-     * Cleanly shut down this StatsD client.
+     * Start the background IO Thread with the given consumer.
+     */
+    void start(QueueConsumer consumer) {
+        this.consumer = consumer;
+        executor.submit(consumer);
+    }
+
+    @Override
+    int queueDepth() {
+        return consumer.queueDepth() + serviceChecks.size() + events.size();
+    }
+
+    /**
+     * Queue the events and service checks in their own lane, and wake the IO Thread up.
+     */
+    @Override
+    boolean send(String message, Lane lane) {
+        if (lane == Lane.METRIC) {
+            return offer(message);
+        }
+        if ((lane == Lane.SERVICE_CHECK ? serviceChecks : events).offer(message)) {
+            telemetry.onMetric();
+            wakeUp();
+            return true;
+        }
+        telemetry.onDropped(lane);
+        ClientEvents.INSTANCE.queueOverflow(lane, Lane.PRIORITY_CAPACITY);
+        return false;
+    }
+
+    /**
+     * Wake the IO Thread up if it is waiting for a metric, so that it drains the other lanes.
+     * Nothing is queued: a full queue cannot lose the signal.
+     */
+    final void wakeUp() {
+        if (consumer.waiting) {
+            LockSupport.unpark(consumer.thread);
+        }
+    }
+
+    /**
+     * Ask the background IO Thread to flush the IO Buffer. The flush happens asynchronously, the
+     * next time the IO Thread wakes up.
+     */
+    @Override
+    void requestFlush() {
+        flushRequested = true;
+    }
+
+    @Override
+    StandardMBean createMBean() throws NotCompliantMBeanException {
+        return new StandardMBean(new StatsDClientMonitor.Background(this),
+            BackgroundStatsDClientMXBean.class, true);
+    }
+
+    long getFlushInterval() {
+        return flushInterval;
+    }
+
+    void setFlushInterval(long flushInterval) {
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushInterval);
+        }
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Cleanly shut down this StatsD client: the IO Thread sends the queued messages, flushes and
+     * closes the protocol.
      */
     @Override
     public void stop() {
+        unregisterMBean();
         try {
             executor.shutdown();
+            wakeUp();
             executor.awaitTermination(30, TimeUnit.SECONDS);
         } catch (final Exception e) {
             handler.handle(e);
         }
     }
+
+    /**
+     * The task run by the background IO Thread: takes the messages from the subclass queue, sends
+     * them to the protocol and flushes it whenever the queue is drained. The polled gauges and the
+     * summaries of the throttled events are sent when due, before the next flush. The protocol is
+     * closed once the client is stopped and the queues are drained.
+     */
+    abstract class QueueConsumer implements Runnable {
+
+        final Protocol protocol;
+
+        QueueConsumer(final Protocol protocol) {
+            this.protocol = protocol;
+        }
+
+        /**
+         * Retrieves the next message to send, waiting for one to be available if necessary. The
+         * wait must be done with {@link #await(long)}, so that {@link #wakeUp()} ends it.
+         *
+         * @param timeout the maximum time to wait, in millis. Implementations may wait less.
+         * @return the next message, a {@link String} or a {@link BatchMessage}, or null if none
+         *     became available in time.
+         */
+        abstract Object poll(long timeout) throws InterruptedException;
+
+        /**
+         * @return true if there is no more message waiting to be sent.
+         */
+        abstract boolean isQueueEmpty();
+
+        /**
+         * @return the number of messages waiting to be sent.
+         */
+        abstract int queueDepth();
+
+        private int serviceCheckCredits = Lane.SERVICE_CHECK.weight;
+        private int eventCredits = Lane.EVENT.weight;
+        private int metricCredits = Lane.METRIC.weight;
+        /**
+         * Whether the IO Thread is waiting for a metric, and should be woken up when an event or a
+         * service check is queued.
+         */
+        volatile boolean waiting;
+        private volatile Thread thread;
+
+        /**
+         * Park the IO Thread for up to the given time, or until {@link #wakeUp()}. May return
+         * early: the caller checks its queue again.
+         *
+         * @param timeout the maximum time to wait, in millis.
+         */
+        final void await(long timeout) throws InterruptedException {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        /**
+         * Retrieves the next message of the lanes, by weighted priority. Only waits for a metric
+         * when the other lanes are empty.
+         */
+        private Object next(long timeout) throws InterruptedException {
+            while (true) {
+                Object message;
+                if (serviceCheckCredits > 0 && (message = serviceChecks.poll()) != null) {
+                    serviceCheckCredits--;
+                    return message;
+                }
+                if (eventCredits > 0 && (message = events.poll()) != null) {
+                    eventCredits--;
+                    return message;
+                }
+                if (!serviceChecks.isEmpty() || !events.isEmpty()) {
+                    message = poll(0);
+                } else {
+                    waiting = true;
+                    try {
+                        // Check again: a message queued before the flag was set did not wake us.
+                        message = serviceChecks.isEmpty() && events.isEmpty()
+                            ? poll(timeout) : null;
+                    } finally {
+                        waiting = false;
+                    }
+                }
+                final boolean lanesWaiting = !serviceChecks.isEmpty() || !events.isEmpty();
+                if (message != null && --metricCredits > 0) {
+                    return message;
+                }
+                // End of the round: the metrics used their share, or there are none left.
+                serviceCheckCredits = Lane.SERVICE_CHECK.weight;
+                eventCredits = Lane.EVENT.weight;
+                metricCredits = Lane.METRIC.weight;
+                if (message != null || !lanesWaiting) {
+                    return message;
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return isQueueEmpty() && serviceChecks.isEmpty() && events.isEmpty();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long lastFlush = System.nanoTime();
+            boolean pending = false;
+            // Ensure that even if the executor/client is stopped, we send all accumulated metric
+            // before stopping the background IO Thread.
+            while (!executor.isShutdown() || !isEmpty()) {
+                try {
+                    final long interval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                    final long wait = pending && interval > 0
+                        ? TimeUnit.NANOSECONDS.toMillis(lastFlush + interval - System.nanoTime())
+                        : MAX_WAIT_MILLIS;
+                    final Object message = next(Math.max(1, Math.min(wait, MAX_WAIT_MILLIS)));
+                    final long start = System.nanoTime();
+                    if (null != message) {
+                        send(message);
+                        pending = true;
+                    }
+                    if (telemetry.isDue(start)) {
+                        telemetry.report(protocol, queueDepth());
+                        pending = true;
+                    }
+                    if (gauges().isDue(start)) {
+                        gauges().poll(protocol, telemetry, handler);
+                        pending = true;
+                    }
+                    final EventThrottle throttle = eventThrottle();
+                    if (throttle != null && throttle.isDue(start)) {
+                        throttle.sendSummaries(protocol, start);
+                        pending = true;
+                    }
+                    if (flushRequested || (pending && isEmpty()
+                        && start - lastFlush >= interval)) {
+                        flushRequested = false;
+                        pending = false;
+                        lastFlush = start;
+                        flush();
+                    }
+                    telemetry.onIoBusy(System.nanoTime() - start);
+                } catch (final Exception e) {
+                    handler.handle(e);
+                }
+            }
+            try {
+                if (pending) {
+                    flush();
+                }
+            } catch (final Exception e) {
+                handler.handle(e);
+            } finally {
+                try {
+                    protocol.close();
+                } catch (final Exception e) {
+                    handler.handle(e);
+                }
+            }
+        }
+
+        private void send(final Object message) throws IOException {
+            if (message instanceof BatchMessage) {
+                final BatchMessage batch = (BatchMessage) message;
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        send(batch.line(i));
+                    } catch (final Exception e) {
+                        // Do not let one bad metric drop the rest of the batch.
+                        handler.handle(e);
+                    }
+                }
+            } else {
+                send((String) message);
+            }
+        }
+
+        private void send(final String message) throws IOException {
+            try {
+                protocol.send(message);
+            } catch (final Exception e) {
+                telemetry.onDropped(Telemetry.DropReason.SEND_ERROR);
+                throw e;
+            }
+        }
+
+        private void flush() throws IOException {
+            telemetry.onFlush();
+            protocol.flush();
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.timgroup.statsd;
+
+/**
+ * Management interface of a {@link BackgroundStatsDClient}, adding the settings of its IO thread
+ * to the {@link StatsDClientMXBean}.
+ */
+public interface BackgroundStatsDClientMXBean extends StatsDClientMXBean {
+
+    /**
+     * @return the minimum time, in millis, between two flushes once the queue is drained.
+     */
+    long getFlushInterval();
+
+    /**
+     * Change the minimum time between two flushes once the queue is drained. Larger values yield
+     * fuller packets at the cost of delivery latency.
+     *
+     * @param flushInterval the new interval in millis, 0 to flush as soon as the queue is drained.
+     */
+    void setFlushInterval(long flushInterval);
+}
@@ -0,0 +1,31 @@
+package com.timgroup.statsd;
+
+/**
+ * A {@link MetricBatch} waiting to be sent, with the client whose prefix and constant tags apply
+ * to it. Queued as a single message by the background clients, and formatted line by line by
+ * their IO Thread as it fills the packets.
+ */
+final class BatchMessage {
+
+    private final DefaultStatsDClient client;
+    private final MetricBatch metrics;
+
+    BatchMessage(DefaultStatsDClient client, MetricBatch metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the number of metrics in the batch.
+     */
+    int size() {
+        return metrics.size();
+    }
+
+    /**
+     * @return the metric at the given index, formatted by the client.
+     */
+    String line(int index) {
+        return client.formatLine(metrics, index);
+    }
+}
@@ -2,6 +2,7 @@ package com.timgroup.statsd;
 
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Blocking implementation of a StatsDClient. The metrics IO Operation is done in the calling
@@ -15,8 +16,16 @@ import java.io.IOException;
  */
 public final class BlockingStatsDClient extends DefaultStatsDClient implements Flushable {
 
+    /**
+     * Maximum time between two checks of the periodic work, so that gauges registered or events
+     * throttled after the last check are picked up.
+     */
+    private static final long MAX_HOUSEKEEPING_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final boolean autoflush;
     private final Protocol protocol;
+    private final boolean timed;
+    private volatile long nextHousekeeping = System.nanoTime();
 
     /**
      * Create a new StatsD client communicating with a StatsD instance on the specified host and
@@ -89,25 +98,102 @@ public final class BlockingStatsDClient extends DefaultStatsDClient implements F
      */
     public BlockingStatsDClient(String prefix, boolean autoflush, String[] constantTags,
         StatsDClientErrorHandler errorHandler, Protocol protocol) {
-        super(prefix, constantTags, errorHandler);
+        this(prefix, autoflush, constantTags, errorHandler, protocol, Telemetry.DISABLED);
+    }
+
+    BlockingStatsDClient(String prefix, boolean autoflush, String[] constantTags,
+        StatsDClientErrorHandler errorHandler, Protocol protocol, Telemetry telemetry) {
+        super(prefix, constantTags, errorHandler, telemetry);
         this.autoflush = autoflush;
         this.protocol = protocol;
+        this.timed = telemetry != Telemetry.DISABLED;
     }
 
     @Override
     protected void send(String message) {
+        final long start = timed ? System.nanoTime() : 0;
+        write(message);
+        afterWrite(start);
+    }
+
+    /**
+     * Send all the metrics of the batch before flushing, so that they share packets even with
+     * autoflush.
+     */
+    @Override
+    void sendBatch(BatchMessage batch) {
+        final long start = timed ? System.nanoTime() : 0;
+        for (int i = 0; i < batch.size(); i++) {
+            write(batch.line(i));
+        }
+        afterWrite(start);
+    }
+
+    private void write(String message) {
         try {
             protocol.send(message);
-            if (autoflush) {
-                protocol.flush();
+            telemetry.onMetric();
+        } catch (IOException e) {
+            telemetry.onDropped(Telemetry.DropReason.SEND_ERROR);
+            handler.handle(e);
+        }
+    }
+
+    /**
+     * @param start the {@link System#nanoTime()} before the write, only set when {@link #timed}.
+     */
+    private void afterWrite(long start) {
+        try {
+            // There is no queue in this client, the caller thread is the IO thread. Without
+            // telemetry, polled gauges or event throttle, there is no periodic work and the clock
+            // is not read.
+            boolean housekept = false;
+            if (timed || gauges().size() > 0 || eventThrottle() != null) {
+                final long now = timed ? start : System.nanoTime();
+                housekept = now - nextHousekeeping >= 0 && housekeep(now);
+            }
+            if (housekept || autoflush) {
+                flush();
             }
         } catch (IOException e) {
             handler.handle(e);
         }
+        if (timed) {
+            telemetry.onIoBusy(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Run the periodic work which is due, then schedule the next check at the earliest deadline.
+     *
+     * @return true if something was sent and needs flushing
+     */
+    private boolean housekeep(long now) throws IOException {
+        final boolean telemetryDue = telemetry.isDue(now);
+        if (telemetryDue) {
+            telemetry.report(protocol, 0);
+        }
+        final GaugeRegistry gauges = gauges();
+        final boolean gaugesDue = gauges.isDue(now);
+        if (gaugesDue) {
+            gauges.poll(protocol, telemetry, handler);
+        }
+        final EventThrottle throttle = eventThrottle();
+        final boolean summariesDue = throttle != null && throttle.isDue(now);
+        if (summariesDue) {
+            throttle.sendSummaries(protocol, now);
+        }
+        long next = gauges.nextDue(telemetry.nextDue(now + MAX_HOUSEKEEPING_NANOS));
+        if (throttle != null) {
+            next = throttle.nextDue(next);
+        }
+        nextHousekeeping = next;
+        return telemetryDue || gaugesDue || summariesDue;
     }
 
     @Override
     public void stop() {
+        unregisterMBean();
         try (Protocol protocol = this.protocol) {
             protocol.flush();
         } catch (IOException e) {
@@ -117,6 +203,7 @@ public final class BlockingStatsDClient extends DefaultStatsDClient implements F
 
     @Override
     public void flush() throws IOException {
+        telemetry.onFlush();
         protocol.flush();
     }
 }
@@ -0,0 +1,146 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A client formatting the metrics with its own prefix and constant tags, and handing them to a
+ * parent client which owns the queue, the IO thread and the transport. Used for the clients of a
+ * {@link StatsDHub} and for the scoped views returned by {@link #withPrefix(String)} and {@link
+ * #withTags(String...)}.
+ */
+final class ChildStatsDClient extends DefaultStatsDClient {
+
+    private final DefaultStatsDClient parent;
+    private final StatsDHub hub;
+    /**
+     * The gauges registered through this client, cancelled when it stops; null if it is not a
+     * client of a hub.
+     */
+    private final Set<PolledGauge> polledGauges;
+
+    /**
+     * @param hub the hub this client is registered with, null if none.
+     */
+    ChildStatsDClient(String prefix, String[] constantTags, DefaultStatsDClient parent,
+        StatsDHub hub) {
+        super(prefix, constantTags, parent.handler, parent.telemetry);
+        this.parent = parent;
+        this.hub = hub;
+        this.polledGauges = hub == null ? null
+            : Collections.newSetFromMap(new ConcurrentHashMap<PolledGauge, Boolean>());
+    }
+
+    /**
+     * Create a scoped view of the given client.
+     */
+    ChildStatsDClient(DefaultStatsDClient client, String renderedPrefix,
+        String renderedConstantTags) {
+        super(client, renderedPrefix, renderedConstantTags);
+        // Views of views send directly to the client doing the IO.
+        this.parent = client instanceof ChildStatsDClient
+            ? ((ChildStatsDClient) client).parent : client;
+        this.hub = null;
+        this.polledGauges = null;
+    }
+
+    @Override
+    protected void send(String message) {
+        parent.send(message);
+    }
+
+    @Override
+    boolean offer(String message) {
+        return parent.offer(message);
+    }
+
+    @Override
+    boolean send(String message, Lane lane) {
+        return parent.send(message, lane);
+    }
+
+    @Override
+    void sendBatch(BatchMessage batch) {
+        parent.sendBatch(batch);
+    }
+
+    @Override
+    public PolledGauge registerGauge(String aspect, LongSupplier supplier, String... tags) {
+        return track(super.registerGauge(aspect, supplier, tags));
+    }
+
+    @Override
+    public PolledGauge registerGauge(String aspect, DoubleSupplier supplier, String... tags) {
+        return track(super.registerGauge(aspect, supplier, tags));
+    }
+
+    private PolledGauge track(PolledGauge gauge) {
+        if (polledGauges != null) {
+            polledGauges.add(gauge);
+        }
+        return gauge;
+    }
+
+    @Override
+    GaugeRegistry gauges() {
+        return parent.gauges();
+    }
+
+    @Override
+    ServiceCheckSuppressor serviceCheckSuppressor() {
+        return parent.serviceCheckSuppressor();
+    }
+
+    @Override
+    GaugeSuppressor gaugeSuppressor() {
+        return parent.gaugeSuppressor();
+    }
+
+    @Override
+    EventThrottle eventThrottle() {
+        return parent.eventThrottle();
+    }
+
+    @Override
+    int packetSizeBytes() {
+        return parent.packetSizeBytes();
+    }
+
+    @Override
+    int maxEventTextLength() {
+        return parent.maxEventTextLength();
+    }
+
+    @Override
+    int queueDepth() {
+        return parent.queueDepth();
+    }
+
+    @Override
+    int queueCapacity() {
+        return parent.queueCapacity();
+    }
+
+    @Override
+    void requestFlush() throws IOException {
+        parent.requestFlush();
+    }
+
+    /**
+     * Unregister from the hub, if any, and cancel the gauges registered through this client. The
+     * parent client, shared with other clients and views, is left running.
+     */
+    @Override
+    public void stop() {
+        unregisterMBean();
+        if (hub != null) {
+            hub.unregister(this);
+            for (PolledGauge gauge : polledGauges) {
+                gauge.cancel();
+            }
+            polledGauges.clear();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.timgroup.statsd;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Hooks for the diagnostic events of the client, recorded with the JDK Flight Recorder when it is
+ * available.
+ *
+ * <p>The JFR implementation lives in {@code src/main/java11} and is only compiled when building
+ * with a JDK 11+, then loaded by reflection: on older JVMs, or when it is missing, {@link
+ * #INSTANCE} is a no-op implementation which the JIT inlines away. Callers should only call the
+ * hooks timing an operation when {@link #isEnabled()} is true, and pass the object returned by the
+ * {@code begin} hook, which may be null, to the matching {@code end} hook.</p>
+ */
+abstract class ClientEvents {
+
+    private static final String JFR_IMPLEMENTATION = "com.timgroup.statsd.JfrClientEvents";
+
+    static final ClientEvents NO_OP = new ClientEvents() {
+        @Override
+        boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        Object beginSend() {
+            return null;
+        }
+
+        @Override
+        void endSend(Object send, InetSocketAddress address, int bytes, int metrics,
+            boolean complete) { /* No-op */ }
+
+        @Override
+        Object beginResolution() {
+            return null;
+        }
+
+        @Override
+        void endResolution(Object resolution, InetSocketAddress previous,
+            InetSocketAddress current) { /* No-op */ }
+
+        @Override
+        void queueOverflow(Lane lane, int queueCapacity) { /* No-op */ }
+    };
+
+    static final ClientEvents INSTANCE = load(JFR_IMPLEMENTATION);
+
+    /**
+     * @return an instance of the given implementation, or {@link #NO_OP} if it cannot be loaded.
+     */
+    static ClientEvents load(String implementation) {
+        try {
+            return (ClientEvents) Class.forName(implementation).newInstance();
+        } catch (Throwable e) {
+            // JFR classes missing or not loadable by this JVM: Java 7/8 or a Java 7 build.
+            return NO_OP;
+        }
+    }
+
+    /**
+     * @return false if no recording currently records the timed events, which the callers can
+     *     then skip.
+     */
+    abstract boolean isEnabled();
+
+    /**
+     * A packet is about to be sent by the transport.
+     *
+     * @return the state to pass to {@link #endSend(Object, InetSocketAddress, int, int, boolean)}.
+     */
+    abstract Object beginSend();
+
+    /**
+     * A packet has been sent by the transport. Sends slower than the threshold of the recording
+     * are also reported as slow sends.
+     *
+     * @param complete false if the packet was truncated.
+     */
+    abstract void endSend(Object send, InetSocketAddress address, int bytes, int metrics,
+        boolean complete);
+
+    /**
+     * The agent address is about to be resolved.
+     *
+     * @return the state to pass to {@link #endResolution(Object, InetSocketAddress,
+     *     InetSocketAddress)}.
+     */
+    abstract Object beginResolution();
+
+    /**
+     * The agent address resolved to a different address than the previous resolution.
+     *
+     * @param previous the previous address, null on the first resolution.
+     */
+    abstract void endResolution(Object resolution, InetSocketAddress previous,
+        InetSocketAddress current);
+
+    /**
+     * A message has been dropped because the queue of its lane was full.
+     */
+    abstract void queueOverflow(Lane lane, int queueCapacity);
+}
@@ -10,12 +10,15 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * elements. With the {@link ConcurrentStatsDClient}, it uses a non-blocking, lock-free queue for
  * inter-thread communication which remove that contention point. However, since this is a
  * non-blocking queue, the background thread needs to wait for element to come into the queue
- * using a separate mechanism; currently it  uses {@link Thread#sleep(long)} to achieve this,
- * which may hurt metric reporting and responsiveness. </p>
+ * using a separate mechanism; currently it parks for up to the wait resolution between two polls,
+ * which may hurt metric reporting and responsiveness. Events and service checks wake it up right
+ * away. </p>
  * <p> {@link NonBlockingStatsDClient} will perform better than {@link ConcurrentStatsDClient}
  * under low to moderate load, but {@link ConcurrentStatsDClient} outperforms
- * {@link NonBlockingStatsDClient} under moderate to high load. Proper benchmarking by the client
- * application needs to be done to decide which implementation to choose from.</p>
+ * {@link NonBlockingStatsDClient} under moderate to high load. The {@code ContentionSuite} of the
+ * benchmarks module measures both, along with {@link BlockingStatsDClient}, at increasing numbers
+ * of producer threads: run it on the target hardware to decide which implementation to choose
+ * from.</p>
  * <p>Thread-safety note: this class is safe to use by multiple thread without external
  * synchronization.</p>
  *
@@ -25,7 +28,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public final class ConcurrentStatsDClient extends BackgroundStatsDClient {
 
-    private final ConcurrentLinkedQueue<String> queue;
+    private final ConcurrentLinkedQueue<Object> queue;
     private final long waitResolution;
 
     /**
@@ -100,45 +103,55 @@ public final class ConcurrentStatsDClient extends BackgroundStatsDClient {
      */
     public ConcurrentStatsDClient(String prefix, long waitResolution, String[] constantTags,
         StatsDClientErrorHandler errorHandler, Protocol protocol) {
-        super(prefix, constantTags, errorHandler);
+        this(prefix, waitResolution, constantTags, errorHandler, protocol, Telemetry.DISABLED);
+    }
+
+    ConcurrentStatsDClient(String prefix, long waitResolution, String[] constantTags,
+        StatsDClientErrorHandler errorHandler, Protocol protocol, Telemetry telemetry) {
+        super(prefix, constantTags, errorHandler, telemetry);
 
         queue = new ConcurrentLinkedQueue<>();
-        executor.submit(new QueueConsumer(protocol));
         this.waitResolution = waitResolution;
+        start(new QueueConsumer(protocol) {
+            @Override
+            Object poll(long timeout) throws InterruptedException {
+                final Object message = queue.poll();
+                if (null == message) {
+                    await(Math.min(timeout, ConcurrentStatsDClient.this.waitResolution));
+                }
+                return message;
+            }
+
+            @Override
+            boolean isQueueEmpty() {
+                return queue.isEmpty();
+            }
+
+            /**
+             * {@inheritDoc} <p>Note that this operation is O(n) on a {@link
+             * ConcurrentLinkedQueue}, it should only be used for reporting purposes.</p>
+             */
+            @Override
+            int queueDepth() {
+                return queue.size();
+            }
+        });
+    }
+
+    @Override
+    int queueCapacity() {
+        return Integer.MAX_VALUE;
     }
 
     @Override
     protected void send(String message) {
         queue.offer(message);
+        telemetry.onMetric();
     }
 
-    private class QueueConsumer implements Runnable {
-
-        private final Protocol protocol;
-
-        QueueConsumer(Protocol protocol) {
-            this.protocol = protocol;
-        }
-
-        @Override
-        public void run() {
-            // Ensure that even if the executor/client is stopped, we send all accumulated metric
-            // before stopping the background IO Thread.
-            while (!executor.isShutdown() || !queue.isEmpty()) {
-                try {
-                    final String message = queue.poll();
-                    if (null == message) {
-                        Thread.sleep(waitResolution);
-                        continue;
-                    }
-                    protocol.send(message);
-                    if (null == queue.peek()) {
-                        protocol.flush();
-                    }
-                } catch (final Exception e) {
-                    handler.handle(e);
-                }
-            }
-        }
+    @Override
+    void sendBatch(BatchMessage batch) {
+        queue.offer(batch);
+        telemetry.onMetric(batch.size());
     }
 }
@@ -1,6 +1,7 @@
 package com.timgroup.statsd;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -11,6 +12,11 @@ import java.util.Formatter;
 import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
  * Base class for any StatsDClient. This class is responsible of formatting the different API
@@ -54,13 +60,34 @@ public abstract class DefaultStatsDClient implements StatsDClient {
             return numberFormatter;
         }
     };
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000};
+    private static final AtomicInteger MBEAN_IDS = new AtomicInteger();
     private final String prefix;
     private final String constantTagsRendered;
+    /**
+     * The part of the event throttling keys identifying this client.
+     */
+    private final String throttleKey;
+    private ObjectName mbeanName;
 
     protected final StatsDClientErrorHandler handler;
+    final Telemetry telemetry;
+    private final GaugeRegistry gauges;
+    private volatile ServiceCheckSuppressor serviceCheckSuppressor;
+    private volatile GaugeSuppressor gaugeSuppressor;
+    private volatile EventThrottle eventThrottle;
+    private volatile int maxEventTextLength;
+    private volatile int packetSizeBytes = Protocol.PACKET_SIZE_BYTES;
 
     public DefaultStatsDClient(
         final String prefix, String[] constantTags, StatsDClientErrorHandler errorHandler) {
+        this(prefix, constantTags, errorHandler, Telemetry.DISABLED);
+    }
+
+    DefaultStatsDClient(final String prefix, String[] constantTags,
+        StatsDClientErrorHandler errorHandler, Telemetry telemetry) {
+        this.telemetry = telemetry;
+        this.gauges = new GaugeRegistry();
         if ((prefix != null) && (!prefix.isEmpty())) {
             this.prefix = prefix + '.';
         } else {
@@ -85,6 +112,20 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         } else {
             constantTagsRendered = null;
         }
+        this.throttleKey = this.prefix + '|' + constantTagsRendered;
+    }
+
+    /**
+     * Constructor of the scoped views, taking the prefix and constant tags already rendered.
+     */
+    DefaultStatsDClient(DefaultStatsDClient parent, String renderedPrefix,
+        String renderedConstantTags) {
+        this.telemetry = parent.telemetry;
+        this.handler = parent.handler;
+        this.gauges = parent.gauges();
+        this.prefix = renderedPrefix;
+        this.constantTagsRendered = renderedConstantTags;
+        this.throttleKey = renderedPrefix + '|' + renderedConstantTags;
     }
 
     /**
@@ -103,6 +144,168 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         return createStatsDProtocol(staticStatsDAddressResolution(hostname, port), null);
     }
 
+    /**
+     * @return the management bean of this client, exposing the {@link StatsDClientMXBean}.
+     */
+    StandardMBean createMBean() throws NotCompliantMBeanException {
+        return new StandardMBean(new StatsDClientMonitor(this), StatsDClientMXBean.class, true);
+    }
+
+    /**
+     * Register a {@link StatsDClientMXBean} for this client in the platform MBean server.
+     *
+     * @param name the name identifying this client, usually its prefix.
+     */
+    synchronized void registerMBean(String name) {
+        try {
+            final ObjectName objectName = new ObjectName("com.timgroup.statsd:type=StatsDClient"
+                + ",prefix=" + ObjectName.quote(name == null ? "" : name)
+                + ",id=" + MBEAN_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(createMBean(), objectName);
+            mbeanName = objectName;
+        } catch (final JMException e) {
+            handler.handle(e);
+        }
+    }
+
+    /**
+     * Unregister the {@link StatsDClientMXBean} of this client, if any. Subclasses must call this
+     * method when stopped.
+     */
+    synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (final JMException e) {
+            handler.handle(e);
+        }
+        mbeanName = null;
+    }
+
+    /**
+     * Histogram of the time spent by the caller threads in the methods of this client, for the
+     * sampled calls. Only recorded when enabled with {@link StatsDClientBuilder#callerLatency(int)}.
+     *
+     * @return the caller latency histogram, null if it is not recorded.
+     */
+    public LatencyHistogram getCallerLatency() {
+        return telemetry.getCallerLatency();
+    }
+
+    /**
+     * @return the polled gauges, owned by the client doing the IO.
+     */
+    GaugeRegistry gauges() {
+        return gauges;
+    }
+
+    /**
+     * @return the suppressor of repeated service checks, owned by the client doing the IO; null
+     *     if they are not suppressed.
+     */
+    ServiceCheckSuppressor serviceCheckSuppressor() {
+        return serviceCheckSuppressor;
+    }
+
+    /**
+     * Only send the service checks when their status changes, or after the given heartbeat.
+     */
+    void suppressServiceChecks(long heartbeatMillis) {
+        this.serviceCheckSuppressor = new ServiceCheckSuppressor(heartbeatMillis);
+    }
+
+    /**
+     * @return the suppressor of unchanged gauges, owned by the client doing the IO; null if they
+     *     are not suppressed.
+     */
+    GaugeSuppressor gaugeSuppressor() {
+        return gaugeSuppressor;
+    }
+
+    /**
+     * Only send the gauges when their value changes, or after the given heartbeat.
+     */
+    void suppressGauges(long heartbeatMillis) {
+        this.gaugeSuppressor = new GaugeSuppressor(heartbeatMillis);
+    }
+
+    /**
+     * @return the rate limiter of the events, owned by the client doing the IO; null if the
+     *     events are not throttled.
+     */
+    EventThrottle eventThrottle() {
+        return eventThrottle;
+    }
+
+    /**
+     * Only send one event per aggregation key, or title, and per window.
+     */
+    void throttleEvents(long windowMillis) {
+        this.eventThrottle = new EventThrottle(windowMillis);
+    }
+
+    /**
+     * @return the maximum length of the event texts, in chars, 0 if they are not truncated.
+     */
+    int maxEventTextLength() {
+        return maxEventTextLength;
+    }
+
+    void setMaxEventTextLength(int maxEventTextLength) {
+        if (maxEventTextLength < 0) {
+            throw new IllegalArgumentException("Length must be positive: " + maxEventTextLength);
+        }
+        this.maxEventTextLength = maxEventTextLength;
+    }
+
+    /**
+     * @return the maximum size, in bytes, of the packets sent by the transport.
+     */
+    int packetSizeBytes() {
+        return packetSizeBytes;
+    }
+
+    void setPacketSizeBytes(int packetSizeBytes) {
+        if (packetSizeBytes <= 0) {
+            throw new IllegalArgumentException("Packet size must be positive: " + packetSizeBytes);
+        }
+        this.packetSizeBytes = packetSizeBytes;
+    }
+
+    /**
+     * @return the state of the gauge in the suppressor, {@link GaugeSuppressor#UNCHANGED} if it
+     *     must not be sent, or null if the gauges are not suppressed.
+     */
+    private GaugeSuppressor.State gaugeState(String aspect, String[] tags, boolean fractional,
+        long bits) {
+        final GaugeSuppressor suppressor = gaugeSuppressor();
+        return suppressor == null ? null
+            : suppressor.changed(prefix, constantTagsRendered, aspect, tags, fractional, bits);
+    }
+
+    /**
+     * @return the number of messages waiting to be sent, 0 if the client has no queue.
+     */
+    int queueDepth() {
+        return 0;
+    }
+
+    /**
+     * @return the maximum number of messages waiting to be sent, 0 if the client has no queue.
+     */
+    int queueCapacity() {
+        return 0;
+    }
+
+    /**
+     * Send the buffered messages to the server, possibly asynchronously.
+     */
+    void requestFlush() throws IOException {
+        // Nothing buffered by default.
+    }
+
     /**
      * Send the formatted StatsD metric string to the server. This can be done in a
      * background thread, the caller thread or any other threading model the implementation
@@ -112,10 +315,33 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     protected abstract void send(String message);
 
+    /**
+     * Send the formatted StatsD metric string like {@link #send(String)}, telling whether it was
+     * accepted.
+     *
+     * @return false if the message was dropped before reaching the transport, e.g. because the
+     *     client queue was full.
+     */
+    boolean offer(String message) {
+        send(message);
+        return true;
+    }
+
+    /**
+     * Send a message of the given lane. The background clients queue the events and service
+     * checks apart from the metrics; by default, they are sent like any other message.
+     *
+     * @return false if the message was dropped before reaching the transport, like {@link
+     *     #offer(String)}.
+     */
+    boolean send(String message, Lane lane) {
+        return offer(message);
+    }
+
     /**
      * Generate a suffix conveying the given tag list to the client
      */
-    private static void tagString(final String[] tags, final String tagPrefix, StringBuilder sb) {
+    static void tagString(final String[] tags, final String tagPrefix, StringBuilder sb) {
         if (tagPrefix != null) {
             sb.append(tagPrefix);
             if ((tags == null) || (tags.length == 0)) {
@@ -172,8 +398,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void count(final String aspect, final long delta, final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, delta, "|c");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -186,14 +413,16 @@ public abstract class DefaultStatsDClient implements StatsDClient {
             return;
         }
 
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, delta, "|c");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     @Override
     public void count(String aspect, double delta, String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, delta, "|c");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     @Override
@@ -202,8 +431,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
             return;
         }
 
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, delta, "|c");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -292,8 +522,14 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(final String aspect, final double value, final String... tags) {
+        final long bits = Double.doubleToLongBits(value);
+        final GaugeSuppressor.State gauge = gaugeState(aspect, tags, true, bits);
+        if (gauge == GaugeSuppressor.UNCHANGED) {
+            return;
+        }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|g");
-        send(sb, tags);
+        sendGauge(sb, tags, start, gauge, bits);
     }
 
     /**
@@ -305,8 +541,15 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long bits = Double.doubleToLongBits(value);
+        final GaugeSuppressor.State gauge = gaugeState(aspect, tags, true, bits);
+        if (gauge == GaugeSuppressor.UNCHANGED) {
+            return;
+        }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|g");
-        send(sb, sampleRate, tags);
+        appendSampleRate(sampleRate, sb);
+        sendGauge(sb, tags, start, gauge, bits);
     }
 
     /**
@@ -320,8 +563,14 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(final String aspect, final long value, final String... tags) {
+        final long bits = value;
+        final GaugeSuppressor.State gauge = gaugeState(aspect, tags, false, bits);
+        if (gauge == GaugeSuppressor.UNCHANGED) {
+            return;
+        }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|g");
-        send(sb, tags);
+        sendGauge(sb, tags, start, gauge, bits);
     }
 
     /**
@@ -333,8 +582,15 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long bits = value;
+        final GaugeSuppressor.State gauge = gaugeState(aspect, tags, false, bits);
+        if (gauge == GaugeSuppressor.UNCHANGED) {
+            return;
+        }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|g");
-        send(sb, sampleRate, tags);
+        appendSampleRate(sampleRate, sb);
+        sendGauge(sb, tags, start, gauge, bits);
     }
 
     /**
@@ -371,6 +627,38 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         recordGaugeValue(aspect, value, sampleRate, tags);
     }
 
+    @Override
+    public void countWithTimestamp(final String aspect, final long delta, final long timestamp,
+        final String... tags) {
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, delta, "|c");
+        send(sb, tags, timestamp, start);
+    }
+
+    @Override
+    public void countWithTimestamp(final String aspect, final double delta, final long timestamp,
+        final String... tags) {
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, delta, "|c");
+        send(sb, tags, timestamp, start);
+    }
+
+    @Override
+    public void gaugeWithTimestamp(final String aspect, final long value, final long timestamp,
+        final String... tags) {
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, value, "|g");
+        send(sb, tags, timestamp, start);
+    }
+
+    @Override
+    public void gaugeWithTimestamp(final String aspect, final double value, final long timestamp,
+        final String... tags) {
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, value, "|g");
+        send(sb, tags, timestamp, start);
+    }
+
     /**
      * Records an execution time in milliseconds for the specified named operation.
      *
@@ -383,8 +671,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
     @Override
     public void recordExecutionTime(final String aspect, final long timeInMs,
         final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, timeInMs, "|ms");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -397,8 +686,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, timeInMs, "|ms");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -418,6 +708,35 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         recordExecutionTime(aspect, value, sampleRate, tags);
     }
 
+    @Override
+    public void recordExecutionTime(final String aspect, final double timeInMs,
+        final String... tags) {
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, timeInMs, "|ms");
+        send(sb, tags, start);
+    }
+
+    @Override
+    public void recordExecutionTime(final String aspect, final double timeInMs,
+        final double sampleRate, final String... tags) {
+        if (isInvalidSample(sampleRate)) {
+            return;
+        }
+        final long start = telemetry.startCall();
+        StringBuilder sb = formatStat(aspect, timeInMs, "|ms");
+        send(sb, sampleRate, tags, start);
+    }
+
+    @Override
+    public Timer timer(final String aspect, final String... tags) {
+        return new Timer(this, aspect, false, tags);
+    }
+
+    @Override
+    public Timer distributionTimer(final String aspect, final String... tags) {
+        return new Timer(this, aspect, true, tags);
+    }
+
     /**
      * Records a value for the specified named histogram.
      *
@@ -430,8 +749,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
     @Override
     public void recordHistogramValue(final String aspect, final double value,
         final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|h");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -444,8 +764,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|h");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -459,8 +780,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordHistogramValue(final String aspect, final long value, final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|h");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -472,8 +794,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|h");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -523,8 +846,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordDistributionValue(final String aspect, final double value, final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|d");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -536,8 +860,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|d");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -569,8 +894,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordDistributionValue(final String aspect, final long value, final String... tags) {
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|d");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     /**
@@ -582,8 +908,9 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         if (isInvalidSample(sampleRate)) {
             return;
         }
+        final long start = telemetry.startCall();
         StringBuilder sb = formatStat(aspect, value, "|d");
-        send(sb, sampleRate, tags);
+        send(sb, sampleRate, tags, start);
     }
 
     /**
@@ -643,9 +970,22 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordEvent(final Event event, final String... tags) {
+        final EventThrottle throttle = eventThrottle();
+        if (throttle != null && !throttle.shouldSend(this, event, tags)) {
+            return;
+        }
+        final long start = telemetry.startCall();
+        send(formatEvent(event, tags), Lane.EVENT);
+        telemetry.endCall(start);
+    }
+
+    /**
+     * Format an event with the prefix and constant tags of this client.
+     */
+    String formatEvent(final Event event, final String[] tags) {
         StringBuilder sb = new StringBuilder();
         final String title = escapeEventString(prefix + event.getTitle());
-        final String text = escapeEventString(event.getText());
+        final String text = escapeEventString(truncate(event.getText(), maxEventTextLength()));
         sb.append("_e{")
             .append(title.length())
             .append(',')
@@ -655,7 +995,29 @@ public abstract class DefaultStatsDClient implements StatsDClient {
             .append('|')
             .append(text);
         eventMap(event, sb);
-        send(sb, tags);
+        tagString(tags, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @return the part of the event throttling keys identifying this client.
+     */
+    String throttleKey() {
+        return throttleKey;
+    }
+
+    /**
+     * @return the text, cut to the given length with a trailing {@code ...} if longer.
+     */
+    static String truncate(final String text, final int maxLength) {
+        if (maxLength <= 0 || text.length() <= maxLength) {
+            return text;
+        }
+        int end = Math.max(0, maxLength - 3);
+        if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + "...";
     }
 
     private String escapeEventString(final String title) {
@@ -673,7 +1035,17 @@ public abstract class DefaultStatsDClient implements StatsDClient {
      */
     @Override
     public void recordServiceCheckRun(final ServiceCheck sc) {
-        send(toStatsDString(sc));
+        final ServiceCheckSuppressor suppressor = serviceCheckSuppressor();
+        final ServiceCheckSuppressor.State check = suppressor == null ? null
+            : suppressor.changed(sc, constantTagsRendered);
+        if (check == ServiceCheckSuppressor.UNCHANGED) {
+            return;
+        }
+        final long start = telemetry.startCall();
+        if (send(toStatsDString(sc), Lane.SERVICE_CHECK) && check != null) {
+            check.sent(sc.getStatus());
+        }
+        telemetry.endCall(start);
     }
 
     private String toStatsDString(final ServiceCheck sc) {
@@ -722,9 +1094,10 @@ public abstract class DefaultStatsDClient implements StatsDClient {
     public void recordSetValue(final String aspect, final String value, final String... tags) {
         // documentation is light, but looking at dogstatsd source, we can send string values
         // here instead of numbers
+        final long start = telemetry.startCall();
         StringBuilder sb = createStringBuilder(aspect);
         sb.append(value).append("|s");
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
     @Override
@@ -732,14 +1105,270 @@ public abstract class DefaultStatsDClient implements StatsDClient {
         stop();
     }
 
-    private void send(StringBuilder sb, double sampleRate, String[] tags) {
+    @Override
+    public void recordHistogramValues(final String aspect, final long[] values, final int offset,
+        final int length, final String... tags) {
+        sendPacked(aspect, values, null, offset, length, "|h", tags);
+    }
+
+    @Override
+    public void recordHistogramValues(final String aspect, final double[] values,
+        final int offset, final int length, final String... tags) {
+        sendPacked(aspect, null, values, offset, length, "|h", tags);
+    }
+
+    @Override
+    public void recordDistributionValues(final String aspect, final long[] values,
+        final int offset, final int length, final String... tags) {
+        sendPacked(aspect, values, null, offset, length, "|d", tags);
+    }
+
+    @Override
+    public void recordDistributionValues(final String aspect, final double[] values,
+        final int offset, final int length, final String... tags) {
+        sendPacked(aspect, null, values, offset, length, "|d", tags);
+    }
+
+    @Override
+    public void recordExecutionTimes(final String aspect, final long[] values, final int offset,
+        final int length, final String... tags) {
+        sendPacked(aspect, values, null, offset, length, "|ms", tags);
+    }
+
+    @Override
+    public void recordExecutionTimes(final String aspect, final double[] values,
+        final int offset, final int length, final String... tags) {
+        sendPacked(aspect, null, values, offset, length, "|ms", tags);
+    }
+
+    /**
+     * Send the values of one of the arrays as multi-value lines, starting a new line whenever the
+     * current one would not fit in a packet anymore.
+     */
+    private void sendPacked(final String aspect, final long[] longValues,
+        final double[] doubleValues, final int offset, final int length, final String metricType,
+        final String[] tags) {
+        final int arrayLength = longValues != null ? longValues.length : doubleValues.length;
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length)) {
+            handler.handle(new IndexOutOfBoundsException("offset " + offset + ", length "
+                + length + ", array length " + arrayLength));
+            return;
+        }
+        if (length == 0) {
+            return;
+        }
+        final long start = telemetry.startCall();
+        final StringBuilder suffix = new StringBuilder(metricType);
+        tagString(tags, suffix);
+        final StringBuilder sb = createStringBuilder(aspect);
+        // The line without its values: name, ':' separators aside, type and tags.
+        final int headerLength = sb.length() - 1;
+        final int fixedBytes = utf8Length(sb, headerLength) + utf8Length(suffix, suffix.length());
+        final int maxLineBytes = maxLineBytes();
+        sb.setLength(headerLength);
+        int lineValues = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final int mark = sb.length();
+            sb.append(':');
+            if (longValues != null) {
+                sb.append(longValues[i]);
+            } else {
+                appendDouble(doubleValues[i], sb);
+            }
+            // Values are ASCII: their length in chars is their length in bytes.
+            if (lineValues > 0 && fixedBytes + sb.length() - headerLength > maxLineBytes) {
+                final String value = sb.substring(mark);
+                sb.setLength(mark);
+                send(sb.append(suffix).toString());
+                sb.setLength(headerLength);
+                sb.append(value);
+                lineValues = 0;
+            }
+            lineValues++;
+        }
+        send(sb.append(suffix).toString());
+        telemetry.endCall(start);
+    }
+
+    /**
+     * Append a value exactly as {@link #NUMBER_FORMATTERS} formats it, without allocating for the
+     * common magnitudes: at most 6 fraction digits, and {@code -0} for the negative values rounding
+     * to zero.
+     */
+    static void appendDouble(final double value, final StringBuilder sb) {
+        final double scaledValue = Math.abs(value) * 1e6;
+        final double half = scaledValue - Math.floor(scaledValue) - 0.5;
+        if (!(scaledValue < 1e15) || Math.abs(half) <= Math.ulp(scaledValue)) {
+            // NaN, infinities, large values, and values too close to a rounding tie for the
+            // scaled double to tell how the formatter rounds them.
+            sb.append(NUMBER_FORMATTERS.get().format(value));
+            return;
+        }
+        final long scaled = Math.round(scaledValue);
+        // The sign bit, so that -0.0 is negative as well.
+        if (Double.doubleToRawLongBits(value) < 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / 1000000);
+        int fraction = (int) (scaled % 1000000);
+        if (fraction == 0) {
+            return;
+        }
+        int digits = 6;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        sb.append('.');
+        for (int pad = digits - 1; pad > 0 && fraction < POWERS_OF_TEN[pad]; pad--) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    /**
+     * @return the maximum size, in bytes, of the lines packing many values.
+     */
+    int maxLineBytes() {
+        return packetSizeBytes();
+    }
+
+    /**
+     * @return the number of bytes of the first {@code length} chars once encoded in UTF-8.
+     */
+    static int utf8Length(final CharSequence chars, final int length) {
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordBatch(final MetricBatch batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        final long start = telemetry.startCall();
+        sendBatch(new BatchMessage(this, batch.copy()));
+        telemetry.endCall(start);
+    }
+
+    /**
+     * Send a batch of metrics. By default, the metrics are formatted and sent one by one on the
+     * caller thread; the background clients queue the whole batch instead.
+     */
+    void sendBatch(BatchMessage batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            send(batch.line(i));
+        }
+    }
+
+    /**
+     * Format a metric of a batch with the prefix and constant tags of this client.
+     */
+    String formatLine(MetricBatch batch, int index) {
+        final StringBuilder sb = batch.isFractional(index)
+            ? formatStat(batch.aspect(index), batch.doubleValue(index), batch.type(index))
+            : formatStat(batch.aspect(index), batch.longValue(index), batch.type(index));
+        tagString(batch.tags(index), sb);
+        return sb.toString();
+    }
+
+    @Override
+    public PolledGauge registerGauge(final String aspect, final LongSupplier supplier,
+        final String... tags) {
+        return registerGauge(aspect, supplier, null, tags);
+    }
+
+    @Override
+    public PolledGauge registerGauge(final String aspect, final DoubleSupplier supplier,
+        final String... tags) {
+        return registerGauge(aspect, null, supplier, tags);
+    }
+
+    private PolledGauge registerGauge(String aspect, LongSupplier longSupplier,
+        DoubleSupplier doubleSupplier, String[] tags) {
+        final StringBuilder suffix = new StringBuilder("|g");
+        tagString(tags, suffix);
+        final GaugeRegistry registry = gauges();
+        final PolledGauge gauge = new PolledGauge(registry, prefix + aspect + ':',
+            suffix.toString(), longSupplier, doubleSupplier);
+        registry.add(gauge);
+        return gauge;
+    }
+
+    @Override
+    public StatsDClient withPrefix(final String prefix) {
+        if ((prefix == null) || prefix.isEmpty()) {
+            return this;
+        }
+        return new ChildStatsDClient(this, this.prefix + prefix + '.', constantTagsRendered);
+    }
+
+    @Override
+    public StatsDClient withTags(final String... tags) {
+        if ((tags == null) || (tags.length == 0)) {
+            return this;
+        }
+        final StringBuilder sb = new StringBuilder();
+        tagString(tags, sb);
+        return new ChildStatsDClient(this, prefix, sb.toString());
+    }
+
+    private void send(StringBuilder sb, double sampleRate, String[] tags, long start) {
         appendSampleRate(sampleRate, sb);
-        send(sb, tags);
+        send(sb, tags, start);
     }
 
-    private void send(StringBuilder sb, String[] tags) {
+    /**
+     * Send the metric with its tags, and record the time elapsed since the {@code start} of the
+     * call when it is sampled.
+     */
+    private void send(StringBuilder sb, String[] tags, long start) {
         tagString(tags, sb);
         send(sb.toString());
+        telemetry.endCall(start);
+    }
+
+    /**
+     * Send the gauge with its tags, and record its value as sent in the suppressor once it reached
+     * the queue or the transport.
+     *
+     * @param gauge the state of the gauge in the suppressor, null if the gauges are not suppressed.
+     */
+    private void sendGauge(StringBuilder sb, String[] tags, long start,
+        GaugeSuppressor.State gauge, long bits) {
+        tagString(tags, sb);
+        if (offer(sb.toString()) && gauge != null) {
+            gauge.sent(bits);
+        }
+        telemetry.endCall(start);
+    }
+
+    /**
+     * Send the metric with its tags and timestamp, if positive.
+     */
+    private void send(StringBuilder sb, String[] tags, long timestamp, long start) {
+        tagString(tags, sb);
+        if (timestamp > 0) {
+            sb.append("|T").append(timestamp);
+        }
+        send(sb.toString());
+        telemetry.endCall(start);
     }
 
     private boolean isInvalidSample(double sampleRate) {
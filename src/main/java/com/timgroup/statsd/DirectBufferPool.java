@@ -0,0 +1,67 @@
+package com.timgroup.statsd;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pool of the direct buffers the UDP protocols write their packets to, by capacity.
+ *
+ * <p>A channel sending a heap buffer first copies it to a temporary direct buffer, from a cache
+ * kept per thread. Writing the packets to a direct buffer removes that copy. The direct buffers
+ * are taken from this pool when a protocol opens and given back when it closes, so that the
+ * clients created and stopped repeatedly do not allocate direct memory, only freed by the GC, each
+ * time.</p>
+ */
+final class DirectBufferPool {
+
+    /**
+     * The number of idle buffers kept per capacity.
+     */
+    static final int MAX_POOLED = 4;
+
+    static final DirectBufferPool INSTANCE = new DirectBufferPool(MAX_POOLED);
+
+    private final int maxPooled;
+    private final ConcurrentMap<Integer, BlockingQueue<ByteBuffer>> pools =
+        new ConcurrentHashMap<>();
+
+    DirectBufferPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return an empty direct buffer of the given capacity, pooled or newly allocated.
+     */
+    ByteBuffer acquire(int capacity) {
+        final BlockingQueue<ByteBuffer> pool = pools.get(capacity);
+        final ByteBuffer buffer = pool == null ? null : pool.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(capacity) : buffer;
+    }
+
+    /**
+     * Give back a buffer, which must not be used anymore. It is dropped if the pool is full.
+     */
+    void release(ByteBuffer buffer) {
+        BlockingQueue<ByteBuffer> pool = pools.get(buffer.capacity());
+        if (pool == null) {
+            final BlockingQueue<ByteBuffer> created = new ArrayBlockingQueue<>(maxPooled);
+            pool = pools.putIfAbsent(buffer.capacity(), created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    /**
+     * @return the number of idle buffers of the given capacity.
+     */
+    int size(int capacity) {
+        final BlockingQueue<ByteBuffer> pool = pools.get(capacity);
+        return pool == null ? 0 : pool.size();
+    }
+}
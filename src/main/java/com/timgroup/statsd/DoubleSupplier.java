@@ -0,0 +1,14 @@
+package com.timgroup.statsd;
+
+/**
+ * Supplies the current value of a gauge polled by the client, see {@link
+ * StatsDClient#registerGauge(String, DoubleSupplier, String...)}. Mirrors {@code
+ * java.util.function.DoubleSupplier}, so that lambdas and method references can be used on Java 8.
+ */
+public interface DoubleSupplier {
+
+    /**
+     * @return the current value.
+     */
+    double getAsDouble();
+}
@@ -0,0 +1,207 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limits the events sharing an aggregation key, or the same title when they have none: the
+ * first occurrence is sent, the following ones are counted instead, and once per window the last
+ * suppressed occurrence is sent with a {@code suppressed_count:<n>} tag.
+ *
+ * <p>The decision is taken before the event is formatted, so a suppressed event costs a map
+ * lookup, with a key reused by the thread, a copy of its tags and a short lock. The summaries are
+ * sent by the thread doing the IO for the client, when {@link #isDue(long)} says so. A key with no
+ * occurrence during a whole window is forgotten, so that its next occurrence is sent right
+ * away.</p>
+ */
+final class EventThrottle {
+
+    static final String SUPPRESSED_COUNT_TAG = "suppressed_count:";
+
+    private final long windowNanos;
+    /**
+     * The key of the lookups, reused by each thread: only the first occurrence of a key allocates
+     * a key, a copy of the probe.
+     */
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong nextPoll;
+
+    /**
+     * @param windowMillis the minimum time between two events sent for the same key.
+     */
+    EventThrottle(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.nextPoll = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    /**
+     * Tells whether the event must be sent, and if not count it as suppressed.
+     *
+     * @param client the client recording the event, which formats the summary.
+     */
+    boolean shouldSend(DefaultStatsDClient client, Event event, String[] tags) {
+        final Key key = PROBE.get().set(client, event);
+        while (true) {
+            final State state = states.get(key);
+            if (state == null) {
+                if (states.putIfAbsent(key.copy(), new State(System.nanoTime())) == null) {
+                    return true;
+                }
+                continue;
+            }
+            synchronized (state) {
+                if (state.removed) {
+                    continue;
+                }
+                state.suppressed++;
+                state.client = client;
+                state.event = event;
+                // The caller may reuse its array before the summary is sent.
+                state.tags = tags == null ? null : tags.clone();
+            }
+            return false;
+        }
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    /**
+     * Tells whether the summaries must be sent, and if so reserve them for the calling thread.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return true if the caller must call {@link #sendSummaries(Protocol, long)}
+     */
+    boolean isDue(long nowNanos) {
+        if (states.isEmpty()) {
+            return false;
+        }
+        final long next = nextPoll.get();
+        return nowNanos - next >= 0 && nextPoll.compareAndSet(next, nowNanos + windowNanos);
+    }
+
+    /**
+     * @param deadlineNanos the latest {@link System#nanoTime()} the caller wants to be woken at.
+     * @return the earliest of the deadline and the next summaries.
+     */
+    long nextDue(long deadlineNanos) {
+        if (states.isEmpty()) {
+            return deadlineNanos;
+        }
+        final long next = nextPoll.get();
+        return next - deadlineNanos < 0 ? next : deadlineNanos;
+    }
+
+    /**
+     * Send a summary for each key whose window elapsed with suppressed events, and forget the keys
+     * whose window elapsed without any. The caller is responsible for flushing the protocol.
+     */
+    void sendSummaries(Protocol protocol, long nowNanos) throws IOException {
+        final Iterator<State> it = states.values().iterator();
+        while (it.hasNext()) {
+            final State state = it.next();
+            final String summary;
+            synchronized (state) {
+                if (nowNanos - state.windowStart < windowNanos) {
+                    continue;
+                }
+                if (state.suppressed == 0) {
+                    state.removed = true;
+                    it.remove();
+                    continue;
+                }
+                final String[] tags = state.tags == null
+                    ? new String[1] : Arrays.copyOf(state.tags, state.tags.length + 1);
+                tags[tags.length - 1] = SUPPRESSED_COUNT_TAG + state.suppressed;
+                summary = state.client.formatEvent(state.event, tags);
+                state.windowStart = nowNanos;
+                state.suppressed = 0;
+                state.client = null;
+                state.event = null;
+                state.tags = null;
+            }
+            protocol.send(summary);
+        }
+    }
+
+    /**
+     * The identity of a throttled event: the client recording it, and its aggregation key or its
+     * title when it has none. The probes of the lookups are mutable; the keys of the map are
+     * copies.
+     */
+    private static final class Key {
+
+        private String client;
+        private boolean aggregated;
+        private String name;
+        private int hash;
+
+        Key set(DefaultStatsDClient client, Event event) {
+            this.client = client.throttleKey();
+            final String aggregationKey = event.getAggregationKey();
+            this.aggregated = aggregationKey != null;
+            this.name = aggregated ? aggregationKey : event.getTitle();
+            final int h = 31 * this.client.hashCode() + (name == null ? 0 : name.hashCode());
+            this.hash = aggregated ? ~h : h;
+            return this;
+        }
+
+        Key copy() {
+            final Key copy = new Key();
+            copy.client = client;
+            copy.aggregated = aggregated;
+            copy.name = name;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && aggregated == other.aggregated
+                && client.equals(other.client)
+                && (name == null ? other.name == null : name.equals(other.name));
+        }
+    }
+
+    /**
+     * The occurrences of a key during the current window, guarded by its lock.
+     */
+    private static final class State {
+
+        long windowStart;
+        int suppressed;
+        boolean removed;
+        DefaultStatsDClient client;
+        Event event;
+        String[] tags;
+
+        State(long windowStart) {
+            this.windowStart = windowStart;
+        }
+    }
+}
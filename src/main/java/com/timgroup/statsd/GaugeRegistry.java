@@ -0,0 +1,88 @@
+package com.timgroup.statsd;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The gauges polled by a client, owned by the client doing the IO. The IO thread polls them when
+ * {@link #isDue(long)} says so, right before flushing, so that their values share the packets of
+ * the other metrics.
+ */
+final class GaugeRegistry {
+
+    static final long DEFAULT_INTERVAL_MILLIS = 10000;
+
+    private final List<PolledGauge> gauges = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextPoll = new AtomicLong(System.nanoTime());
+    private volatile long intervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INTERVAL_MILLIS);
+
+    void add(PolledGauge gauge) {
+        gauges.add(gauge);
+    }
+
+    void remove(PolledGauge gauge) {
+        gauges.remove(gauge);
+    }
+
+    int size() {
+        return gauges.size();
+    }
+
+    long getIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+    }
+
+    void setIntervalMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive: " + intervalMillis);
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Tells whether the gauges must be polled, and if so reserve the poll for the calling thread.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return true if the caller must call {@link #poll(Protocol, Telemetry,
+     *     StatsDClientErrorHandler)}
+     */
+    boolean isDue(long nowNanos) {
+        if (gauges.isEmpty()) {
+            return false;
+        }
+        final long next = nextPoll.get();
+        return nowNanos - next >= 0 && nextPoll.compareAndSet(next, nowNanos + intervalNanos);
+    }
+
+    /**
+     * @param deadlineNanos the latest {@link System#nanoTime()} the caller wants to be woken at.
+     * @return the earliest of the deadline and the next poll.
+     */
+    long nextDue(long deadlineNanos) {
+        if (gauges.isEmpty()) {
+            return deadlineNanos;
+        }
+        final long next = nextPoll.get();
+        return next - deadlineNanos < 0 ? next : deadlineNanos;
+    }
+
+    /**
+     * Poll all the gauges and send their values to the protocol. The caller is responsible for
+     * flushing it. A failing supplier is reported to the handler and skipped.
+     */
+    void poll(Protocol protocol, Telemetry telemetry, StatsDClientErrorHandler handler) {
+        final StringBuilder sb = new StringBuilder();
+        for (PolledGauge gauge : gauges) {
+            try {
+                sb.setLength(0);
+                gauge.appendTo(sb);
+                protocol.send(sb.toString());
+                telemetry.onMetric();
+            } catch (final Exception e) {
+                handler.handle(e);
+            }
+        }
+    }
+}
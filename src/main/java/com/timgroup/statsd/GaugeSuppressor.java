@@ -0,0 +1,187 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses the gauge values equal to the last value sent for the same gauge: a gauge is sent when
+ * its value changes, and otherwise at most once per heartbeat interval. Gauges are identified by
+ * the prefix and constant tags of the client, their name and their tags.
+ *
+ * <p>The key is hashed from the hash codes of its strings, which the JVM caches, so that the
+ * no-change path is a single map lookup, with a probe reused by the thread, and a few volatile
+ * reads: nothing is formatted or allocated. The state of a gauge is only locked to record a
+ * value sent.</p>
+ *
+ * <p>The gauges not sent for two heartbeat intervals are evicted by a sweep done at most once per
+ * interval, by the first caller after it elapsed.</p>
+ */
+final class GaugeSuppressor {
+
+    /**
+     * The state returned for the gauges which must not be sent.
+     */
+    static final State UNCHANGED = new State();
+
+    /**
+     * The key of the lookups, reused by each thread: only the gauges seen for the first time
+     * allocate a key, a copy of the probe.
+     */
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    private final long heartbeatMillis;
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * @param heartbeatMillis the maximum time between two sends of a gauge whose value does not
+     *     change.
+     */
+    GaugeSuppressor(long heartbeatMillis) {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("Heartbeat must be positive: " + heartbeatMillis);
+        }
+        this.heartbeatMillis = heartbeatMillis;
+        this.nextSweep = new AtomicLong(nowMillis() + heartbeatMillis);
+    }
+
+    /**
+     * Tells whether the gauge must be sent. The caller records the value with {@link
+     * State#sent(long)} once the gauge reached the client queue or transport, so that a dropped
+     * value is not suppressed the next time.
+     *
+     * @param prefix the prefix of the client sending the gauge.
+     * @param constantTags the rendered constant tags of the client sending the gauge.
+     * @param fractional whether the value is a double, whose bits are given.
+     * @return the state of the gauge, or {@link #UNCHANGED} if it must not be sent.
+     */
+    State changed(String prefix, String constantTags, String aspect, String[] tags,
+        boolean fractional, long bits) {
+        final long now = nowMillis();
+        sweepIfDue(now);
+        final Key probe = PROBE.get().set(prefix, constantTags, aspect, tags, fractional);
+        State state = states.get(probe);
+        if (state == null) {
+            final State created = new State();
+            state = states.putIfAbsent(probe.copy(), created);
+            if (state == null) {
+                return created;
+            }
+        }
+        return state.isCurrent(bits, now, heartbeatMillis) ? UNCHANGED : state;
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    private void sweepIfDue(long now) {
+        final long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + heartbeatMillis)) {
+            return;
+        }
+        final Iterator<State> it = states.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().sentMillis >= 2 * heartbeatMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * The last value sent for a gauge, written under its lock.
+     */
+    static final class State {
+
+        volatile boolean sent;
+        volatile long bits;
+        volatile long sentMillis = nowMillis();
+
+        boolean isCurrent(long bits, long now, long heartbeatMillis) {
+            return sent && this.bits == bits && now - sentMillis < heartbeatMillis;
+        }
+
+        /**
+         * Record the given value as sent.
+         */
+        synchronized void sent(long bits) {
+            this.bits = bits;
+            this.sentMillis = nowMillis();
+            this.sent = true;
+        }
+    }
+
+    /**
+     * The identity of a gauge. The probes of the lookups are mutable; the keys of the map are
+     * copies, owning their tags.
+     */
+    private static final class Key {
+
+        private String prefix;
+        private String constantTags;
+        private String aspect;
+        private String[] tags;
+        private boolean fractional;
+        private int hash;
+
+        Key set(String prefix, String constantTags, String aspect, String[] tags,
+            boolean fractional) {
+            this.prefix = prefix;
+            this.constantTags = constantTags;
+            this.aspect = aspect;
+            this.tags = tags;
+            this.fractional = fractional;
+            int h = prefix.hashCode();
+            h = 31 * h + (constantTags == null ? 0 : constantTags.hashCode());
+            h = 31 * h + aspect.hashCode();
+            h = 31 * h + Arrays.hashCode(tags);
+            this.hash = fractional ? ~h : h;
+            return this;
+        }
+
+        /**
+         * @return a key equal to this one, with its own copy of the tags.
+         */
+        Key copy() {
+            final Key copy = new Key();
+            copy.prefix = prefix;
+            copy.constantTags = constantTags;
+            copy.aspect = aspect;
+            copy.tags = tags == null ? null : tags.clone();
+            copy.fractional = fractional;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && fractional == other.fractional
+                && aspect.equals(other.aspect) && Arrays.equals(tags, other.tags)
+                && prefix.equals(other.prefix)
+                && (constantTags == null ? other.constantTags == null
+                    : constantTags.equals(other.constantTags));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.timgroup.statsd;
+
+import java.io.Closeable;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Opt-in collector of the JVM runtime metrics: heap and non-heap memory, memory pools, garbage
+ * collections, threads and buffer pools.
+ *
+ * <pre>
+ *   JvmMetrics jvm = JvmMetrics.register(client);
+ *   ...
+ *   jvm.close();
+ * </pre>
+ *
+ * <p>The metrics are {@link StatsDClient#registerGauge(String, LongSupplier, String...) polled
+ * gauges}: their names and tags are formatted once, at registration, and they are read on the IO
+ * thread of the client at each gauge poll interval, packed with the other metrics. No thread is
+ * started. The garbage collection counts and times are sent as gauges of their totals since the
+ * start of the JVM: a gauge keeps the last value of each flush interval, so it cannot carry
+ * deltas.</p>
+ *
+ * <p>Each collection reads every MXBean once, which allocates one {@link MemoryUsage} per memory
+ * pool plus two for the heap and non-heap totals, and formats one line per metric: 3 per memory
+ * pool, 2 per collector, 3 per buffer pool and 8 for the JVM. That is about 45 lines, 2 packets,
+ * on a HotSpot JVM with 8 memory pools, 2 collectors and 3 buffer pools.</p>
+ *
+ * <p>Where the collectors emit the HotSpot GC notifications, the duration of each collection is
+ * also recorded as a {@code jvm.gc.pause} timer, from the thread delivering the notification.</p>
+ */
+public final class JvmMetrics implements Closeable {
+
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private final StatsDClient client;
+    private final List<PolledGauge> gauges = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final ConcurrentMap<String, String[]> pauseTags = new ConcurrentHashMap<>();
+    private final NotificationListener pauseListener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            recordPause(notification);
+        }
+    };
+
+    private JvmMetrics(StatsDClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Start collecting the JVM runtime metrics with the given client.
+     *
+     * @param client the client to send the metrics with, usually a background client.
+     * @return the collector, to {@link #close()} before stopping the client.
+     */
+    public static JvmMetrics register(StatsDClient client) {
+        final JvmMetrics metrics = new JvmMetrics(client);
+        metrics.registerMemory(ManagementFactory.getMemoryMXBean());
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            metrics.registerMemoryPool(pool);
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            metrics.registerCollector(collector);
+        }
+        metrics.registerThreads(ManagementFactory.getThreadMXBean());
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            metrics.registerBufferPool(pool);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stop collecting: cancel the polled gauges and the GC notification listeners.
+     */
+    @Override
+    public synchronized void close() {
+        for (PolledGauge gauge : gauges) {
+            gauge.cancel();
+        }
+        gauges.clear();
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(pauseListener);
+            } catch (final ListenerNotFoundException e) {
+                // Already removed.
+            }
+        }
+        emitters.clear();
+    }
+
+    private void registerMemory(final MemoryMXBean memory) {
+        final Reading heap = new Reading() {
+            @Override
+            MemoryUsage read() {
+                return memory.getHeapMemoryUsage();
+            }
+        };
+        register("jvm.heap_memory", heap.used());
+        register("jvm.heap_memory_committed", heap.committed());
+        register("jvm.heap_memory_max", heap.max());
+        final Reading nonHeap = new Reading() {
+            @Override
+            MemoryUsage read() {
+                return memory.getNonHeapMemoryUsage();
+            }
+        };
+        register("jvm.non_heap_memory", nonHeap.used());
+        register("jvm.non_heap_memory_committed", nonHeap.committed());
+    }
+
+    private void registerMemoryPool(final MemoryPoolMXBean pool) {
+        final String tag = "pool:" + tagValue(pool.getName());
+        final Reading reading = new Reading() {
+            @Override
+            MemoryUsage read() {
+                return pool.getUsage();
+            }
+        };
+        register("jvm.memory_pool.used", reading.used(), tag);
+        register("jvm.memory_pool.committed", reading.committed(), tag);
+        final MemoryUsage usage = pool.getUsage();
+        if (usage != null && usage.getMax() >= 0) {
+            register("jvm.memory_pool.max", reading.max(), tag);
+        }
+    }
+
+    private void registerCollector(final GarbageCollectorMXBean collector) {
+        final String tag = "gc:" + tagValue(collector.getName());
+        register("jvm.gc.count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return Math.max(0, collector.getCollectionCount());
+            }
+        }, tag);
+        register("jvm.gc.time", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return Math.max(0, collector.getCollectionTime());
+            }
+        }, tag);
+        if (collector instanceof NotificationEmitter) {
+            final NotificationEmitter emitter = (NotificationEmitter) collector;
+            emitter.addNotificationListener(pauseListener, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    private void registerThreads(final ThreadMXBean threads) {
+        register("jvm.thread_count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return threads.getThreadCount();
+            }
+        });
+        register("jvm.daemon_thread_count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return threads.getDaemonThreadCount();
+            }
+        });
+        register("jvm.peak_thread_count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return threads.getPeakThreadCount();
+            }
+        });
+    }
+
+    private void registerBufferPool(final BufferPoolMXBean pool) {
+        final String tag = "pool:" + tagValue(pool.getName());
+        register("jvm.buffer_pool.count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return pool.getCount();
+            }
+        }, tag);
+        register("jvm.buffer_pool.used", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return pool.getMemoryUsed();
+            }
+        }, tag);
+        register("jvm.buffer_pool.capacity", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return pool.getTotalCapacity();
+            }
+        }, tag);
+    }
+
+    private synchronized void register(String aspect, LongSupplier supplier, String... tags) {
+        gauges.add(client.registerGauge(aspect, supplier, tags));
+    }
+
+    private void recordPause(Notification notification) {
+        if (!GC_NOTIFICATION.equals(notification.getType())
+            || !(notification.getUserData() instanceof CompositeData)) {
+            return;
+        }
+        final CompositeData info = (CompositeData) notification.getUserData();
+        final String name = (String) info.get("gcName");
+        final Object duration = ((CompositeData) info.get("gcInfo")).get("duration");
+        String[] tags = pauseTags.get(name);
+        if (tags == null) {
+            tags = new String[] {"gc:" + tagValue(name)};
+            pauseTags.putIfAbsent(name, tags);
+        }
+        client.recordExecutionTime("jvm.gc.pause", ((Number) duration).longValue(), tags);
+    }
+
+    /**
+     * @return the given name as a tag value, e.g. {@code g1_old_gen} for {@code G1 Old Gen}.
+     */
+    static String tagValue(String name) {
+        final StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            final char c = Character.toLowerCase(name.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+                sb.append(c);
+            } else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '_') {
+                sb.append('_');
+            }
+        }
+        while (sb.length() > 0 && sb.charAt(sb.length() - 1) == '_') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The memory usage of a pool, read once per poll: the gauges of a pool are registered in a row
+     * and polled in order by a single thread, so the first one reads the usage and the others reuse
+     * it.
+     */
+    private abstract static class Reading {
+
+        private MemoryUsage usage;
+
+        abstract MemoryUsage read();
+
+        LongSupplier used() {
+            return new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    usage = read();
+                    return usage == null ? 0 : usage.getUsed();
+                }
+            };
+        }
+
+        LongSupplier committed() {
+            return new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return usage == null ? 0 : usage.getCommitted();
+                }
+            };
+        }
+
+        LongSupplier max() {
+            return new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return usage == null ? 0 : usage.getMax();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.timgroup.statsd;
+
+/**
+ * The classes of messages which the background clients queue separately, so that a flood of
+ * metrics cannot drop the events and service checks. Each lane has its own bound and its own drop
+ * accounting.
+ */
+enum Lane {
+    /**
+     * Service checks, drained first.
+     */
+    SERVICE_CHECK("service_checks", 16),
+    /**
+     * Events, drained after the service checks.
+     */
+    EVENT("events", 8),
+    /**
+     * Everything else.
+     */
+    METRIC("metrics", 64);
+
+    /**
+     * Capacity of the service check and event lanes of the background clients; the metric lane
+     * has the capacity of the client queue.
+     */
+    static final int PRIORITY_CAPACITY = 1024;
+
+    final String telemetryName;
+    /**
+     * Maximum number of messages drained from this lane in a round when the other lanes are not
+     * empty.
+     */
+    final int weight;
+
+    Lane(String telemetryName, int weight) {
+        this.telemetryName = telemetryName;
+        this.weight = weight;
+    }
+}
@@ -0,0 +1,14 @@
+package com.timgroup.statsd;
+
+/**
+ * Supplies the current value of a gauge polled by the client, see {@link
+ * StatsDClient#registerGauge(String, LongSupplier, String...)}. Mirrors {@code
+ * java.util.function.LongSupplier}, so that lambdas and method references can be used on Java 8.
+ */
+public interface LongSupplier {
+
+    /**
+     * @return the current value.
+     */
+    long getAsLong();
+}
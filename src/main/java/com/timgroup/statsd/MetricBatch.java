@@ -0,0 +1,224 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of metrics, submitted to a client in a single call with {@link
+ * StatsDClient#recordBatch(MetricBatch)}.
+ *
+ * <p>Appending a metric only stores its name, value and tags: the formatting is done when the
+ * batch is sent, by the background IO Thread for the non-blocking clients, which also only take a
+ * single queue slot for the whole batch. The batch is copied when submitted, so it can be cleared
+ * and filled again right away:</p>
+ * <pre>
+ *   MetricBatch batch = new MetricBatch();
+ *   for (Partition partition : partitions) {
+ *       batch.gauge("consumer.lag", partition.lag(), partition.tags());
+ *   }
+ *   statsd.recordBatch(batch);
+ *   batch.clear();
+ * </pre>
+ *
+ * <p>A batch is not thread-safe.</p>
+ */
+public final class MetricBatch {
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private String[] aspects;
+    private String[] types;
+    private long[] longValues;
+    private double[] doubleValues;
+    private boolean[] fractional;
+    private String[][] tags;
+    private int size;
+
+    public MetricBatch() {
+        this(64);
+    }
+
+    /**
+     * @param capacity the number of metrics the batch holds before growing.
+     */
+    public MetricBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        aspects = new String[capacity];
+        types = new String[capacity];
+        longValues = new long[capacity];
+        doubleValues = new double[capacity];
+        fractional = new boolean[capacity];
+        tags = new String[capacity][];
+    }
+
+    /**
+     * Adds a counter delta to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch count(String aspect, long delta, String... tags) {
+        return add(aspect, "|c", delta, tags);
+    }
+
+    /**
+     * Adds a counter delta to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch count(String aspect, double delta, String... tags) {
+        return add(aspect, "|c", delta, tags);
+    }
+
+    /**
+     * Adds a gauge value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch gauge(String aspect, long value, String... tags) {
+        return add(aspect, "|g", value, tags);
+    }
+
+    /**
+     * Adds a gauge value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch gauge(String aspect, double value, String... tags) {
+        return add(aspect, "|g", value, tags);
+    }
+
+    /**
+     * Adds an execution time, in milliseconds, to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch time(String aspect, long timeInMs, String... tags) {
+        return add(aspect, "|ms", timeInMs, tags);
+    }
+
+    /**
+     * Adds a histogram value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch histogram(String aspect, long value, String... tags) {
+        return add(aspect, "|h", value, tags);
+    }
+
+    /**
+     * Adds a histogram value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch histogram(String aspect, double value, String... tags) {
+        return add(aspect, "|h", value, tags);
+    }
+
+    /**
+     * Adds a distribution value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch distribution(String aspect, long value, String... tags) {
+        return add(aspect, "|d", value, tags);
+    }
+
+    /**
+     * Adds a distribution value to the batch.
+     *
+     * @return this
+     */
+    public MetricBatch distribution(String aspect, double value, String... tags) {
+        return add(aspect, "|d", value, tags);
+    }
+
+    /**
+     * @return the number of metrics in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all the metrics from the batch, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(aspects, 0, size, null);
+        Arrays.fill(tags, 0, size, null);
+        size = 0;
+    }
+
+    private MetricBatch add(String aspect, String type, long value, String[] tags) {
+        final int i = next();
+        aspects[i] = aspect;
+        types[i] = type;
+        longValues[i] = value;
+        fractional[i] = false;
+        this.tags[i] = tags == null ? NO_TAGS : tags;
+        return this;
+    }
+
+    private MetricBatch add(String aspect, String type, double value, String[] tags) {
+        final int i = next();
+        aspects[i] = aspect;
+        types[i] = type;
+        doubleValues[i] = value;
+        fractional[i] = true;
+        this.tags[i] = tags == null ? NO_TAGS : tags;
+        return this;
+    }
+
+    private int next() {
+        if (size == aspects.length) {
+            resize(size * 2);
+        }
+        return size++;
+    }
+
+    private void resize(int capacity) {
+        aspects = Arrays.copyOf(aspects, capacity);
+        types = Arrays.copyOf(types, capacity);
+        longValues = Arrays.copyOf(longValues, capacity);
+        doubleValues = Arrays.copyOf(doubleValues, capacity);
+        fractional = Arrays.copyOf(fractional, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+    }
+
+    /**
+     * @return a copy of this batch, trimmed to its size.
+     */
+    MetricBatch copy() {
+        final MetricBatch copy = new MetricBatch(size);
+        System.arraycopy(aspects, 0, copy.aspects, 0, size);
+        System.arraycopy(types, 0, copy.types, 0, size);
+        System.arraycopy(longValues, 0, copy.longValues, 0, size);
+        System.arraycopy(doubleValues, 0, copy.doubleValues, 0, size);
+        System.arraycopy(fractional, 0, copy.fractional, 0, size);
+        System.arraycopy(tags, 0, copy.tags, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    String aspect(int i) {
+        return aspects[i];
+    }
+
+    String type(int i) {
+        return types[i];
+    }
+
+    boolean isFractional(int i) {
+        return fractional[i];
+    }
+
+    long longValue(int i) {
+        return longValues[i];
+    }
+
+    double doubleValue(int i) {
+        return doubleValues[i];
+    }
+
+    String[] tags(int i) {
+        return tags[i];
+    }
+}
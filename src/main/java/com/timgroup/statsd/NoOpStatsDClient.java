@@ -30,10 +30,18 @@ public class NoOpStatsDClient implements StatsDClient {
     @Override public void recordGaugeValue(String aspect, long value, double sampleRate, String... tags) { }
     @Override public void gauge(String aspect, long value, String... tags) { }
     @Override public void gauge(String aspect, long value, double sampleRate, String... tags) { }
+    @Override public void countWithTimestamp(String aspect, long delta, long timestamp, String... tags) { }
+    @Override public void countWithTimestamp(String aspect, double delta, long timestamp, String... tags) { }
+    @Override public void gaugeWithTimestamp(String aspect, long value, long timestamp, String... tags) { }
+    @Override public void gaugeWithTimestamp(String aspect, double value, long timestamp, String... tags) { }
     @Override public void recordExecutionTime(String aspect, long timeInMs, String... tags) { }
     @Override public void recordExecutionTime(String aspect, long timeInMs, double sampleRate, String... tags) { }
     @Override public void time(String aspect, long value, String... tags) { }
     @Override public void time(String aspect, long value, double sampleRate, String... tags) { }
+    @Override public void recordExecutionTime(String aspect, double timeInMs, String... tags) { }
+    @Override public void recordExecutionTime(String aspect, double timeInMs, double sampleRate, String... tags) { }
+    @Override public Timer timer(String aspect, String... tags) { return Timer.NO_OP; }
+    @Override public Timer distributionTimer(String aspect, String... tags) { return Timer.NO_OP; }
     @Override public void recordHistogramValue(String aspect, double value, String... tags) { }
     @Override public void recordHistogramValue(String aspect, double value, double sampleRate, String... tags) { }
     @Override public void histogram(String aspect, double value, String... tags) { }
@@ -54,4 +62,15 @@ public class NoOpStatsDClient implements StatsDClient {
     @Override public void recordServiceCheckRun(ServiceCheck sc) { }
     @Override public void serviceCheck(ServiceCheck sc) { }
     @Override public void recordSetValue(String aspect, String value, String... tags) { }
+    @Override public void recordHistogramValues(String aspect, long[] values, int offset, int length, String... tags) { }
+    @Override public void recordHistogramValues(String aspect, double[] values, int offset, int length, String... tags) { }
+    @Override public void recordDistributionValues(String aspect, long[] values, int offset, int length, String... tags) { }
+    @Override public void recordDistributionValues(String aspect, double[] values, int offset, int length, String... tags) { }
+    @Override public void recordExecutionTimes(String aspect, long[] values, int offset, int length, String... tags) { }
+    @Override public void recordExecutionTimes(String aspect, double[] values, int offset, int length, String... tags) { }
+    @Override public void recordBatch(MetricBatch batch) { }
+    @Override public PolledGauge registerGauge(String aspect, LongSupplier supplier, String... tags) { return PolledGauge.NO_OP; }
+    @Override public PolledGauge registerGauge(String aspect, DoubleSupplier supplier, String... tags) { return PolledGauge.NO_OP; }
+    @Override public StatsDClient withPrefix(String prefix) { return this; }
+    @Override public StatsDClient withTags(String... tags) { return this; }
 }
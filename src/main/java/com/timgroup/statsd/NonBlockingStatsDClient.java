@@ -4,7 +4,6 @@ import java.net.InetSocketAddress;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 
 
@@ -38,7 +37,7 @@ import java.util.concurrent.TimeUnit;
  */
 public final class NonBlockingStatsDClient extends BackgroundStatsDClient {
 
-    private final BlockingQueue<String> queue;
+    private final BlockingQueue<Object> queue;
 
     /**
      * Create a new StatsD client communicating with a StatsD instance on the
@@ -264,43 +263,71 @@ public final class NonBlockingStatsDClient extends BackgroundStatsDClient {
     public NonBlockingStatsDClient(final String prefix, final int queueSize, String[] constantTags,
         final StatsDClientErrorHandler errorHandler, Protocol protocol)
         throws StatsDClientException {
-        super(prefix, constantTags, errorHandler);
+        this(prefix, queueSize, constantTags, errorHandler, protocol, Telemetry.DISABLED);
+    }
+
+    NonBlockingStatsDClient(final String prefix, final int queueSize, String[] constantTags,
+        final StatsDClientErrorHandler errorHandler, Protocol protocol, Telemetry telemetry)
+        throws StatsDClientException {
+        super(prefix, constantTags, errorHandler, telemetry);
 
         queue = new LinkedBlockingQueue<>(queueSize);
-        executor.submit(new QueueConsumer(protocol));
+        start(new QueueConsumer(protocol) {
+            @Override
+            Object poll(long timeout) throws InterruptedException {
+                Object message = queue.poll();
+                if (message == null && timeout > 0) {
+                    await(timeout);
+                    message = queue.poll();
+                }
+                return message;
+            }
+
+            @Override
+            boolean isQueueEmpty() {
+                return queue.isEmpty();
+            }
+
+            @Override
+            int queueDepth() {
+                return queue.size();
+            }
+        });
     }
 
     @Override
-    protected void send(final String message) {
-        queue.offer(message);
+    int queueCapacity() {
+        return queue.size() + queue.remainingCapacity();
     }
 
-    private class QueueConsumer implements Runnable {
-
-        private final Protocol protocol;
+    @Override
+    protected void send(final String message) {
+        offer(message);
+    }
 
-        QueueConsumer(final Protocol protocol) {
-            this.protocol = protocol;
+    @Override
+    boolean offer(final String message) {
+        if (queue.offer(message)) {
+            telemetry.onMetric();
+            wakeUp();
+            return true;
         }
+        telemetry.onDropped(Telemetry.DropReason.QUEUE_FULL);
+        ClientEvents.INSTANCE.queueOverflow(Lane.METRIC, queueCapacity());
+        return false;
+    }
 
-        @Override
-        public void run() {
-            // Ensure that even if the executor/client is stopped, we send all accumulated metric
-            // before stopping the background IO Thread.
-            while (!executor.isShutdown() || !queue.isEmpty()) {
-                try {
-                    final String message = queue.poll(1, TimeUnit.SECONDS);
-                    if (null != message) {
-                        protocol.send(message);
-                        if (null == queue.peek()) {
-                            protocol.flush();
-                        }
-                    }
-                } catch (final Exception e) {
-                    handler.handle(e);
-                }
-            }
+    /**
+     * Queue the whole batch as a single message: it only takes one slot of the queue.
+     */
+    @Override
+    void sendBatch(final BatchMessage batch) {
+        if (queue.offer(batch)) {
+            telemetry.onMetric(batch.size());
+            wakeUp();
+        } else {
+            telemetry.onDropped(Telemetry.DropReason.QUEUE_FULL, batch.size());
+            ClientEvents.INSTANCE.queueOverflow(Lane.METRIC, queueCapacity());
         }
     }
-
 }
@@ -0,0 +1,139 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token buckets capping the packets and the bytes sent per second, so that a flush of many packets
+ * does not overflow the receive buffer of the agent.
+ *
+ * <p>Up to a burst of packets is sent back-to-back, then the sending thread waits for the buckets
+ * to refill. On a background client that thread is the IO thread: while it waits the queue fills
+ * up, and the usual queue overflow policy applies to the callers, who never wait. A blocking
+ * client sends from the application threads, which must not wait: its pacer drops the packets over
+ * the rate instead. A packet larger than the byte bucket is sent once the bucket is full, and the
+ * excess is paid back before the next one.</p>
+ *
+ * <p>Used by the single thread sending the packets: not thread-safe.</p>
+ */
+final class PacketPacer {
+
+    /**
+     * The pacer which lets every packet go at once.
+     */
+    static final PacketPacer UNLIMITED = new PacketPacer(0, 0, 1, 1, false);
+
+    private final double packetsPerNano;
+    private final double bytesPerNano;
+    private final double packetBurst;
+    private final double byteBurst;
+    private double packetTokens;
+    private double byteTokens;
+    private long lastRefill;
+    private final boolean waits;
+
+    /**
+     * @param packetsPerSecond the maximum rate of packets, 0 for no limit.
+     * @param bytesPerSecond the maximum rate of bytes, 0 for no limit.
+     * @param burstPackets the number of packets sent back-to-back before pacing.
+     * @param packetSizeBytes the size of the packets, the byte burst being {@code burstPackets}
+     *     full packets.
+     * @param waits true to wait for the buckets to refill, false to drop the packets over the rate.
+     */
+    PacketPacer(long packetsPerSecond, long bytesPerSecond, int burstPackets,
+        int packetSizeBytes, boolean waits) {
+        if (packetsPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rates must not be negative: " + packetsPerSecond
+                + " packets/s, " + bytesPerSecond + " bytes/s");
+        }
+        if (burstPackets <= 0) {
+            throw new IllegalArgumentException("Burst must be positive: " + burstPackets);
+        }
+        this.packetsPerNano = packetsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.bytesPerNano = bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.packetBurst = burstPackets;
+        this.byteBurst = (double) burstPackets * packetSizeBytes;
+        this.packetTokens = packetBurst;
+        this.byteTokens = byteBurst;
+        this.lastRefill = System.nanoTime();
+        this.waits = waits;
+    }
+
+    boolean isUnlimited() {
+        return packetsPerNano == 0 && bytesPerNano == 0;
+    }
+
+    /**
+     * Take the tokens of a packet of the given size: wait for them if this pacer waits, otherwise
+     * take them only if the buckets hold them. Returns early if the thread is interrupted.
+     *
+     * @return false if the packet is over the rate and must be dropped.
+     */
+    boolean acquire(int bytes) {
+        if (!waits) {
+            return tryAcquire(bytes);
+        }
+        if (isUnlimited()) {
+            return true;
+        }
+        refill(System.nanoTime());
+        long wait;
+        while ((wait = waitNanos(bytes)) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, wait);
+            refill(System.nanoTime());
+        }
+        take(bytes);
+        return true;
+    }
+
+    /**
+     * Take the tokens of a packet of the given size, if the buckets hold them. Never waits.
+     *
+     * @return false if the packet is over the rate and must be dropped.
+     */
+    boolean tryAcquire(int bytes) {
+        if (isUnlimited()) {
+            return true;
+        }
+        refill(System.nanoTime());
+        if (packetsPerNano > 0 && packetTokens < 1) {
+            return false;
+        }
+        if (bytesPerNano > 0 && byteTokens < Math.min(bytes, byteBurst)) {
+            return false;
+        }
+        take(bytes);
+        return true;
+    }
+
+    private void take(int bytes) {
+        if (packetsPerNano > 0) {
+            packetTokens -= 1;
+        }
+        if (bytesPerNano > 0) {
+            byteTokens -= bytes;
+        }
+    }
+
+    private void refill(long now) {
+        final long elapsed = now - lastRefill;
+        lastRefill = now;
+        packetTokens = Math.min(packetBurst, packetTokens + elapsed * packetsPerNano);
+        byteTokens = Math.min(byteBurst, byteTokens + elapsed * bytesPerNano);
+    }
+
+    /**
+     * @return the time until both buckets hold the tokens of a packet of the given size.
+     */
+    private long waitNanos(int bytes) {
+        double wait = 0;
+        if (packetsPerNano > 0 && packetTokens < 1) {
+            wait = (1 - packetTokens) / packetsPerNano;
+        }
+        final double needed = Math.min(bytes, byteBurst);
+        if (bytesPerNano > 0 && byteTokens < needed) {
+            wait = Math.max(wait, (needed - byteTokens) / bytesPerNano);
+        }
+        return (long) Math.ceil(wait);
+    }
+}
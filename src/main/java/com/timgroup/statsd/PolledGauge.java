@@ -0,0 +1,56 @@
+package com.timgroup.statsd;
+
+/**
+ * A gauge whose value is polled by the client, returned by {@link
+ * StatsDClient#registerGauge(String, LongSupplier, String...)}. Its name and tags are formatted
+ * once, at registration.
+ */
+public final class PolledGauge {
+
+    /**
+     * Gauge which is never polled, shared by the {@link NoOpStatsDClient}.
+     */
+    static final PolledGauge NO_OP = new PolledGauge(null, "", "", null, null);
+
+    private final GaugeRegistry registry;
+    private final String header;
+    private final String suffix;
+    private final LongSupplier longSupplier;
+    private final DoubleSupplier doubleSupplier;
+
+    /**
+     * @param registry the registry to unregister from, null if none.
+     * @param header the formatted name of the gauge, up to and including the ':'.
+     * @param suffix the formatted type and tags.
+     */
+    PolledGauge(GaugeRegistry registry, String header, String suffix, LongSupplier longSupplier,
+        DoubleSupplier doubleSupplier) {
+        this.registry = registry;
+        this.header = header;
+        this.suffix = suffix;
+        this.longSupplier = longSupplier;
+        this.doubleSupplier = doubleSupplier;
+    }
+
+    /**
+     * Stop polling this gauge.
+     */
+    public void cancel() {
+        if (registry != null) {
+            registry.remove(this);
+        }
+    }
+
+    /**
+     * Poll the supplier and append the gauge line.
+     */
+    void appendTo(StringBuilder sb) {
+        sb.append(header);
+        if (longSupplier != null) {
+            sb.append(longSupplier.getAsLong());
+        } else {
+            DefaultStatsDClient.appendDouble(doubleSupplier.getAsDouble(), sb);
+        }
+        sb.append(suffix);
+    }
+}
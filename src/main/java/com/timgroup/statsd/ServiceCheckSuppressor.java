@@ -0,0 +1,192 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses the service checks repeating the last status sent for the same check: a check is
+ * sent when its status changes, and otherwise at most once per heartbeat interval. Checks are
+ * identified by their name, hostname and tags, including the constant tags of the client.
+ *
+ * <p>The state of each check is a single {@link AtomicLong} packing the last status sent and the
+ * time it was sent, so that deciding costs a map lookup, with a probe reused by the thread, and a
+ * volatile read. The checks not sent for two heartbeat intervals are evicted by a sweep done at
+ * most once per interval, by the first caller after it elapsed.</p>
+ */
+final class ServiceCheckSuppressor {
+
+    /**
+     * The state returned for the checks which must not be sent.
+     */
+    static final State UNCHANGED = new State(0);
+
+    private static final int STATUS_BITS = 3;
+    private static final long STATUS_MASK = (1 << STATUS_BITS) - 1;
+    /**
+     * The status of the checks never sent, out of the range of {@link ServiceCheck.Status}.
+     */
+    private static final long NO_STATUS = STATUS_MASK;
+
+    /**
+     * The key of the lookups, reused by each thread: only the checks seen for the first time
+     * allocate a key, a copy of the probe.
+     */
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    private final long heartbeatMillis;
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * @param heartbeatMillis the maximum time between two sends of a check whose status does not
+     *     change.
+     */
+    ServiceCheckSuppressor(long heartbeatMillis) {
+        if (heartbeatMillis <= 0) {
+            throw new IllegalArgumentException("Heartbeat must be positive: " + heartbeatMillis);
+        }
+        this.heartbeatMillis = heartbeatMillis;
+        this.nextSweep = new AtomicLong(nowMillis() + heartbeatMillis);
+    }
+
+    /**
+     * Tells whether the check must be sent. The caller records its status with {@link
+     * State#sent(int)} once the check reached the client queue or transport, so that a dropped
+     * status change is not suppressed the next time.
+     *
+     * @param constantTags the rendered constant tags of the client sending the check.
+     * @return the state of the check, or {@link #UNCHANGED} if it must not be sent.
+     */
+    State changed(ServiceCheck sc, String constantTags) {
+        final long now = nowMillis();
+        sweepIfDue(now);
+        final Key probe = PROBE.get().set(sc.getName(), sc.getHostname(), sc.getTags(),
+            constantTags);
+        State state = states.get(probe);
+        if (state == null) {
+            final State created = new State(now);
+            state = states.putIfAbsent(probe.copy(), created);
+            if (state == null) {
+                return created;
+            }
+        }
+        return state.isCurrent(sc.getStatus(), now, heartbeatMillis) ? UNCHANGED : state;
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    private void sweepIfDue(long now) {
+        final long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + heartbeatMillis)) {
+            return;
+        }
+        final Iterator<State> it = states.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().sentMillis() >= 2 * heartbeatMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * The last status sent for a check, packed with the time it was sent, or created if it was
+     * never sent.
+     */
+    static final class State {
+
+        private final AtomicLong packed;
+
+        State(long now) {
+            this.packed = new AtomicLong((now << STATUS_BITS) | NO_STATUS);
+        }
+
+        boolean isCurrent(int status, long now, long heartbeatMillis) {
+            final long last = packed.get();
+            return (last & STATUS_MASK) == status && now - (last >> STATUS_BITS) < heartbeatMillis;
+        }
+
+        long sentMillis() {
+            return packed.get() >> STATUS_BITS;
+        }
+
+        /**
+         * Record the given status as sent.
+         */
+        void sent(int status) {
+            packed.set((nowMillis() << STATUS_BITS) | status);
+        }
+    }
+
+    /**
+     * The identity of a check. The probes of the lookups are mutable; the keys of the map are
+     * copies, owning their tags.
+     */
+    private static final class Key {
+
+        private String name;
+        private String hostname;
+        private String[] tags;
+        private String constantTags;
+        private int hash;
+
+        Key set(String name, String hostname, String[] tags, String constantTags) {
+            this.name = name;
+            this.hostname = hostname;
+            this.tags = tags;
+            this.constantTags = constantTags;
+            int h = name == null ? 0 : name.hashCode();
+            h = 31 * h + (hostname == null ? 0 : hostname.hashCode());
+            h = 31 * h + Arrays.hashCode(tags);
+            this.hash = 31 * h + (constantTags == null ? 0 : constantTags.hashCode());
+            return this;
+        }
+
+        /**
+         * @return a key equal to this one, with its own copy of the tags.
+         */
+        Key copy() {
+            final Key copy = new Key();
+            copy.name = name;
+            copy.hostname = hostname;
+            copy.tags = tags == null ? null : tags.clone();
+            copy.constantTags = constantTags;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && equal(name, other.name)
+                && equal(hostname, other.hostname) && Arrays.equals(tags, other.tags)
+                && equal(constantTags, other.constantTags);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -259,6 +259,64 @@ public interface StatsDClient extends Closeable {
      */
     void gauge(String aspect, long value, double sampleRate, String... tags);
 
+    /**
+     * Adjusts the specified counter by a given delta, at the given time rather than when the
+     * agent receives it. Use it to send metrics buffered or replayed after a delay, e.g. while the
+     * agent was restarting, without shifting them in time.
+     *
+     * <p>This method is a DataDog extension, and requires version 7.40 or later of the Datadog
+     * Agent.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param aspect
+     *     the name of the counter to adjust
+     * @param delta
+     *     the amount to adjust the counter by
+     * @param timestamp
+     *     the time of the value, in seconds since the epoch; 0 or less to let the agent use the
+     *     time of reception
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void countWithTimestamp(String aspect, long delta, long timestamp, String... tags);
+
+    /**
+     * Adjusts the specified counter by a given delta, at the given time.
+     *
+     * @see #countWithTimestamp(String, long, long, String...)
+     */
+    void countWithTimestamp(String aspect, double delta, long timestamp, String... tags);
+
+    /**
+     * Records the value of the specified named gauge at the given time rather than when the agent
+     * receives it.
+     *
+     * <p>This method is a DataDog extension, and requires version 7.40 or later of the Datadog
+     * Agent.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param aspect
+     *     the name of the gauge
+     * @param value
+     *     the reading of the gauge
+     * @param timestamp
+     *     the time of the value, in seconds since the epoch; 0 or less to let the agent use the
+     *     time of reception
+     * @param tags
+     *     array of tags to be added to the data
+     * @see #countWithTimestamp(String, long, long, String...)
+     */
+    void gaugeWithTimestamp(String aspect, long value, long timestamp, String... tags);
+
+    /**
+     * Records the value of the specified named gauge at the given time.
+     *
+     * @see #gaugeWithTimestamp(String, long, long, String...)
+     */
+    void gaugeWithTimestamp(String aspect, double value, long timestamp, String... tags);
+
     /**
      * Records an execution time in milliseconds for the specified named operation.
      *
@@ -303,6 +361,66 @@ public interface StatsDClient extends Closeable {
      */
     void time(String aspect, long value, double sampleRate, String... tags);
 
+    /**
+     * Records an execution time in milliseconds, with a sub-millisecond precision, for the
+     * specified named operation.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param timeInMs
+     *     the time in milliseconds
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordExecutionTime(String aspect, double timeInMs, String... tags);
+
+    /**
+     * Records an execution time in milliseconds, with a sub-millisecond precision, for the
+     * specified named operation.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param timeInMs
+     *     the time in milliseconds
+     * @param sampleRate
+     *     percentage of time metric to be sent
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordExecutionTime(String aspect, double timeInMs, double sampleRate, String... tags);
+
+    /**
+     * Returns a reusable {@link Timer} recording durations measured with {@link
+     * System#nanoTime()} as execution times, in fractional milliseconds.
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param tags
+     *     array of tags to be added to each duration
+     */
+    Timer timer(String aspect, String... tags);
+
+    /**
+     * Returns a reusable {@link Timer} recording durations measured with {@link
+     * System#nanoTime()} as distribution values, in fractional milliseconds.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param tags
+     *     array of tags to be added to each duration
+     */
+    Timer distributionTimer(String aspect, String... tags);
+
     /**
      * Records a value for the specified named histogram.
      *
@@ -537,4 +655,238 @@ public interface StatsDClient extends Closeable {
      */
     void recordSetValue(String aspect, String value, String... tags);
 
+    /**
+     * Records many values for the specified named histogram.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|h}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the histogram
+     * @param values
+     *     the array holding the values
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordHistogramValues(String aspect, long[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records many values for the specified named histogram.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|h}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the histogram
+     * @param values
+     *     the array holding the values
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordHistogramValues(String aspect, double[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records many values for the specified named distribution.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|d}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the distribution
+     * @param values
+     *     the array holding the values
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordDistributionValues(String aspect, long[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records many values for the specified named distribution.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|d}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the distribution
+     * @param values
+     *     the array holding the values
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordDistributionValues(String aspect, double[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records many execution times, in milliseconds, for the specified named operation.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|ms}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param values
+     *     the array holding the times in milliseconds
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordExecutionTimes(String aspect, long[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records many execution times, in milliseconds, for the specified named operation.
+     *
+     * <p>The values are packed into multi-value lines ({@code aspect:v1:v2:...|ms}), each fitting
+     * in a packet, without boxing nor allocating per value. Multi-value lines require version 6.25
+     * / 7.25 or later of the Datadog Agent.</p>
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception. A range out of
+     * the bounds of the array is passed to the error handler as an {@link
+     * IndexOutOfBoundsException}, and nothing is recorded.</p>
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param values
+     *     the array holding the times in milliseconds
+     * @param offset
+     *     the index of the first value to record
+     * @param length
+     *     the number of values to record
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    void recordExecutionTimes(String aspect, double[] values, int offset, int length,
+        String... tags);
+
+    /**
+     * Records all the metrics of a batch at once. The batch is copied: it can be cleared and reused
+     * as soon as this method returns. The metrics are formatted with the prefix and constant tags
+     * of this client, on the background IO thread for the non-blocking clients.
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param batch
+     *     the metrics to record
+     */
+    void recordBatch(MetricBatch batch);
+
+    /**
+     * Registers a gauge whose value is polled by the client, e.g. the size of a pool or a cache.
+     * The name and tags are formatted once; the supplier is then called on the IO thread right
+     * before a flush, at most once per poll interval (see {@link
+     * StatsDClientBuilder#gaugePollInterval(long)}), so that the values share packets with the
+     * other metrics. The blocking client has no IO thread: it polls the gauges on the first call
+     * to one of its methods after the interval elapsed.
+     *
+     * <p>The supplier must be fast and thread-safe. If it throws, the exception is passed to the
+     * error handler and the gauge is skipped for this poll.</p>
+     *
+     * @param aspect
+     *     the name of the gauge
+     * @param supplier
+     *     supplies the current reading of the gauge
+     * @param tags
+     *     array of tags to be added to the data
+     * @return the registered gauge, to {@link PolledGauge#cancel() cancel} when no longer needed
+     */
+    PolledGauge registerGauge(String aspect, LongSupplier supplier, String... tags);
+
+    /**
+     * Registers a gauge whose value is polled by the client.
+     *
+     * @param aspect
+     *     the name of the gauge
+     * @param supplier
+     *     supplies the current reading of the gauge
+     * @param tags
+     *     array of tags to be added to the data
+     * @return the registered gauge, to {@link PolledGauge#cancel() cancel} when no longer needed
+     * @see #registerGauge(String, LongSupplier, String...)
+     */
+    PolledGauge registerGauge(String aspect, DoubleSupplier supplier, String... tags);
+
+    /**
+     * Returns a view of this client whose metrics are named under the given additional prefix,
+     * e.g. {@code client.withPrefix("db").count("queries", 1)} sends {@code <prefix>.db.queries}.
+     *
+     * <p>The view shares the queue and transport of this client: creating one is cheap, and
+     * using it costs the same as using this client. Stopping a view does nothing; the shared
+     * transport is stopped with this client. The prefix applies to metrics and event titles.</p>
+     *
+     * @param prefix the prefix to append to the prefix of this client
+     * @return the scoped view, or this client if the prefix is null or empty
+     */
+    StatsDClient withPrefix(String prefix);
+
+    /**
+     * Returns a view of this client which adds the given tags to everything it sends, on top of
+     * the constant tags of this client.
+     *
+     * <p>The view shares the queue and transport of this client: creating one is cheap, and
+     * using it costs the same as using this client. Stopping a view does nothing; the shared
+     * transport is stopped with this client.</p>
+     *
+     * @param tags the tags to add
+     * @return the scoped view, or this client if no tag is given
+     */
+    StatsDClient withTags(String... tags);
 }
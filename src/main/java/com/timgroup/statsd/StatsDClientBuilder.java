@@ -1,6 +1,8 @@
 package com.timgroup.statsd;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
 
 /**
  * Builder for the different {@link StatsDClient} imlpementations.
@@ -15,8 +17,23 @@ public final class StatsDClientBuilder {
     private String[] constantTags;
     private StatsDClientErrorHandler errorHandler;
 
+    private long telemetryInterval;
+    private boolean jmx;
+    private int callerLatencySampling;
+    private long gaugePollInterval;
+    private long serviceCheckHeartbeat;
+    private long gaugeHeartbeat;
+    private long eventThrottleWindow;
+    private int maxEventTextLength;
+
     private boolean useUdp;
     private Protocol customProtocol;
+    private Protocol largePayloadProtocol;
+    private int packetSize;
+    private boolean autoPacketSize;
+    private long pacingPacketsPerSecond;
+    private long pacingBytesPerSecond;
+    private int pacingBurst;
     // TODO
 //    private boolean useTcp;
 
@@ -68,6 +85,138 @@ public final class StatsDClientBuilder {
         return this;
     }
 
+    /**
+     * Enable the client self-telemetry: the client periodically sends {@code
+     * datadog.dogstatsd.client.*} metrics describing its own activity (metrics sent and dropped,
+     * bytes and packets sent, flushes, queue depth and IO thread busy time), on the same transport
+     * as the other metrics. Packets and bytes are only tracked with the UDP protocol.
+     *
+     * @param intervalMillis the time between two reports, in millis. 0 disables the telemetry.
+     * @return this
+     */
+    public StatsDClientBuilder telemetry(long intervalMillis) {
+        this.telemetryInterval = intervalMillis;
+        return this;
+    }
+
+    /**
+     * Register a {@link StatsDClientMXBean} in the platform MBean server for each client built by
+     * this builder, unregistered when the client is stopped.
+     *
+     * @return this
+     */
+    public StatsDClientBuilder jmx() {
+        this.jmx = true;
+        return this;
+    }
+
+    /**
+     * Time a sample of the calls to the client methods, from the caller thread point of view, into
+     * a {@link LatencyHistogram} available from {@link DefaultStatsDClient#getCallerLatency()}.
+     * When the {@link #telemetry(long) telemetry} is enabled, the percentiles over each report
+     * interval are also sent as {@code datadog.dogstatsd.client.caller_latency_ns.*} gauges.
+     *
+     * <p>A timed call costs two {@link System#nanoTime()} and an atomic increment; the other calls
+     * only draw a thread-local random number. When disabled, the cost is a field check.</p>
+     *
+     * @param sampling time one call out of this many, rounded up to a power of two; 1 to time
+     *     every call, 0 to disable.
+     * @return this
+     */
+    public StatsDClientBuilder callerLatency(int sampling) {
+        if (sampling < 0) {
+            throw new IllegalArgumentException("Sampling must be positive: " + sampling);
+        }
+        this.callerLatencySampling = sampling;
+        return this;
+    }
+
+    /**
+     * @param intervalMillis the time between two polls of the gauges registered with {@link
+     *     StatsDClient#registerGauge(String, LongSupplier, String...)}, in millis. Defaults to 10
+     *     seconds.
+     * @return this
+     */
+    public StatsDClientBuilder gaugePollInterval(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive: " + intervalMillis);
+        }
+        this.gaugePollInterval = intervalMillis;
+        return this;
+    }
+
+    /**
+     * Suppress the service checks repeating the last status sent: a service check is sent when its
+     * status changes, and otherwise at most once per heartbeat. Checks are told apart by their
+     * name, hostname and tags; a change of message alone does not trigger a send.
+     *
+     * @param heartbeatMillis the maximum time between two sends of a check whose status does not
+     *     change, in millis. 0, the default, sends every service check.
+     * @return this
+     */
+    public StatsDClientBuilder serviceCheckHeartbeat(long heartbeatMillis) {
+        if (heartbeatMillis < 0) {
+            throw new IllegalArgumentException("Heartbeat must be positive: " + heartbeatMillis);
+        }
+        this.serviceCheckHeartbeat = heartbeatMillis;
+        return this;
+    }
+
+    /**
+     * Suppress the gauge values equal to the last value sent: a gauge is sent when its value
+     * changes, and otherwise at most once per heartbeat. Gauges are told apart by their name and
+     * tags; the timestamped gauges are always sent. Deciding to suppress a value is a single map
+     * lookup, done before any formatting.
+     *
+     * <p>Keep the heartbeat below the flush interval of the agent, 10 seconds by default, so that
+     * the gauges do not show gaps.</p>
+     *
+     * @param heartbeatMillis the maximum time between two sends of a gauge whose value does not
+     *     change, in millis. 0, the default, sends every gauge value.
+     * @return this
+     */
+    public StatsDClientBuilder gaugeHeartbeat(long heartbeatMillis) {
+        if (heartbeatMillis < 0) {
+            throw new IllegalArgumentException("Heartbeat must be positive: " + heartbeatMillis);
+        }
+        this.gaugeHeartbeat = heartbeatMillis;
+        return this;
+    }
+
+    /**
+     * Rate limit the events sharing an aggregation key, or the same title when they have none: the
+     * first occurrence is sent right away, the following ones are only counted, and about once per
+     * window the last of them is sent with a {@code suppressed_count:<n>} tag. The suppressed
+     * events are dropped before being formatted.
+     *
+     * @param windowMillis the minimum time between two events sent for the same key, in millis.
+     *     0, the default, sends every event.
+     * @return this
+     */
+    public StatsDClientBuilder eventThrottle(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.eventThrottleWindow = windowMillis;
+        return this;
+    }
+
+    /**
+     * Truncate the text of the events longer than the given length, so that they fit in a packet.
+     * The truncated texts end with {@code ...}.
+     *
+     * @param chars the maximum length of the event texts, in chars. 0, the default, never
+     *     truncates.
+     * @return this
+     */
+    public StatsDClientBuilder maxEventTextLength(int chars) {
+        if (chars < 0) {
+            throw new IllegalArgumentException("Length must be positive: " + chars);
+        }
+        this.maxEventTextLength = chars;
+        return this;
+    }
+
     /**
      * Indicate that the clients built by this builder use the UDP protocol.
      *
@@ -88,19 +237,161 @@ public final class StatsDClientBuilder {
         return this;
     }
 
-    private Protocol createProtocol() {
+    /**
+     * Send the messages too large for a UDP packet, such as long events or service checks with
+     * many tags, with the given protocol, e.g. over TCP or a Unix socket. By default, they are sent
+     * alone in a datagram of up to 65507 bytes, the UDP limit. Ignored with a {@link
+     * #customProtocol(Protocol) custom protocol}.
+     *
+     * @param protocol the protocol to send the large messages with, flushed after each of them
+     *     and closed when the client is stopped.
+     * @return this
+     */
+    public StatsDClientBuilder largePayloadProtocol(Protocol protocol) {
+        this.largePayloadProtocol = protocol;
+        return this;
+    }
+
+    /**
+     * Set the maximum size of the packets sent, 1400 bytes by default, which fits the MTU of most
+     * internet paths. Larger packets, e.g. 8192 bytes over the loopback interface or a network
+     * with jumbo frames, take fewer system calls for the same metrics; they must fit in the
+     * receive buffer of the agent. With a {@link #customProtocol(Protocol) custom protocol}, this
+     * is the size its packets are assumed to have.
+     *
+     * @param bytes the maximum size of a packet, up to 65507 bytes.
+     * @return this
+     * @see #autoPacketSize()
+     */
+    public StatsDClientBuilder packetSize(int bytes) {
+        if (bytes <= 0 || bytes > UdpProtocol.MAX_DATAGRAM_BYTES) {
+            throw new IllegalArgumentException("Packet size must be between 1 and "
+                + UdpProtocol.MAX_DATAGRAM_BYTES + ": " + bytes);
+        }
+        this.packetSize = bytes;
+        this.autoPacketSize = false;
+        return this;
+    }
+
+    /**
+     * Pick the packet size of the UDP protocol from the destination, resolved when the client is
+     * built: 8192 bytes over the loopback interface, the MTU of the outgoing interface less the
+     * IP and UDP headers when it has jumbo frames, up to 8192 bytes, and the default 1400 bytes
+     * otherwise.
+     *
+     * @return this
+     * @see #packetSize(int)
+     */
+    public StatsDClientBuilder autoPacketSize() {
+        this.autoPacketSize = true;
+        this.packetSize = 0;
+        return this;
+    }
+
+    /**
+     * Cap the rate of the UDP packets, so that a flush of many packets does not overflow the
+     * receive buffer of the agent. Up to {@code burstPackets} packets are sent back-to-back, then
+     * the IO thread of a background client waits for the token buckets to refill: the queue
+     * absorbs the burst, and once it is full its usual overflow policy applies, the callers never
+     * waiting. A blocking client sends from the calling threads, which must not wait: it drops the
+     * packets over the rate, and counts them, until the buckets refill.
+     *
+     * @param packetsPerSecond the maximum number of packets per second, 0 for no limit.
+     * @param bytesPerSecond the maximum number of bytes per second, 0 for no limit.
+     * @param burstPackets the number of full packets which can be sent back-to-back.
+     * @return this
+     */
+    public StatsDClientBuilder pacing(long packetsPerSecond, long bytesPerSecond,
+        int burstPackets) {
+        if (packetsPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rates must not be negative: " + packetsPerSecond
+                + " packets/s, " + bytesPerSecond + " bytes/s");
+        }
+        if (burstPackets <= 0) {
+            throw new IllegalArgumentException("Burst must be positive: " + burstPackets);
+        }
+        this.pacingPacketsPerSecond = packetsPerSecond;
+        this.pacingBytesPerSecond = bytesPerSecond;
+        this.pacingBurst = burstPackets;
+        return this;
+    }
+
+    private Telemetry createTelemetry() {
+        if (telemetryInterval <= 0 && !jmx && callerLatencySampling == 0) {
+            return Telemetry.DISABLED;
+        }
+        return new Telemetry(Math.max(0, telemetryInterval), constantTags, callerLatencySampling);
+    }
+
+    private StatsDClient register(DefaultStatsDClient client, Protocol protocol) {
+        if (protocol instanceof UdpProtocol) {
+            client.setPacketSizeBytes(((UdpProtocol) protocol).packetSizeBytes());
+        } else if (packetSize > 0) {
+            client.setPacketSizeBytes(packetSize);
+        }
+        if (gaugePollInterval > 0) {
+            client.gauges().setIntervalMillis(gaugePollInterval);
+        }
+        if (serviceCheckHeartbeat > 0) {
+            client.suppressServiceChecks(serviceCheckHeartbeat);
+        }
+        if (gaugeHeartbeat > 0) {
+            client.suppressGauges(gaugeHeartbeat);
+        }
+        if (eventThrottleWindow > 0) {
+            client.throttleEvents(eventThrottleWindow);
+        }
+        if (maxEventTextLength > 0) {
+            client.setMaxEventTextLength(maxEventTextLength);
+        }
+        if (jmx) {
+            client.registerMBean(prefix);
+        }
+        return client;
+    }
+
+    /**
+     * @param paceByWaiting true if the protocol is used by an IO thread, which can wait for the
+     *     pacer; false if it is used by the application threads of a blocking client.
+     */
+    private Protocol createProtocol(Telemetry telemetry, boolean paceByWaiting) {
         if (customProtocol != null) {
             return customProtocol;
         }
         // FIXME always use Udp since there are no alternative for now.
+        final Callable<InetSocketAddress> addressLookup =
+            DefaultStatsDClient.staticStatsDAddressResolution(hostname, port);
+        final int size = resolvePacketSize(addressLookup);
         try {
-            return new UdpProtocol(
-                DefaultStatsDClient.staticStatsDAddressResolution(hostname, port), errorHandler);
+            return new UdpProtocol(addressLookup, errorHandler, telemetry, largePayloadProtocol,
+                size, createPacer(size, paceByWaiting));
         } catch (IOException e) {
             throw new StatsDClientException("Unable to create protcol.", e);
         }
     }
 
+    private PacketPacer createPacer(int packetSize, boolean waits) {
+        if (pacingPacketsPerSecond == 0 && pacingBytesPerSecond == 0) {
+            return PacketPacer.UNLIMITED;
+        }
+        return new PacketPacer(pacingPacketsPerSecond, pacingBytesPerSecond, pacingBurst,
+            packetSize, waits);
+    }
+
+    private int resolvePacketSize(Callable<InetSocketAddress> addressLookup) {
+        if (packetSize > 0) {
+            return packetSize;
+        }
+        if (autoPacketSize) {
+            try {
+                return UdpProtocol.autoPacketSize(addressLookup.call());
+            } catch (Exception e) {
+                throw new StatsDClientException("Failed to lookup StatsD host", e);
+            }
+        }
+        return Protocol.PACKET_SIZE_BYTES;
+    }
+
     /**
      * Build a StatsDClient client in non-blocking mode with the specified parameters of this
      * builder.
@@ -117,8 +408,38 @@ public final class StatsDClientBuilder {
      * @return A {@link NonBlockingStatsDClient} with the specified queue size.
      */
     public StatsDClient buildNonBlocking(int queueSize) {
-        return new NonBlockingStatsDClient(prefix, queueSize, constantTags, errorHandler,
-            createProtocol());
+        final Telemetry telemetry = createTelemetry();
+        final Protocol protocol = createProtocol(telemetry, true);
+        return register(new NonBlockingStatsDClient(prefix, queueSize, constantTags, errorHandler,
+            protocol, telemetry), protocol);
+    }
+
+    /**
+     * Build a {@link StatsDHub}, sharing a non-blocking transport between many clients, with the
+     * specified parameters of this builder. The prefix and constant tags of this builder only
+     * apply to the telemetry and the MBean of the hub: each client created by the hub has its own.
+     *
+     * @return A {@link StatsDHub} with an unbounded queue.
+     */
+    public StatsDHub buildHub() {
+        return buildHub(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Build a {@link StatsDHub}, sharing a non-blocking transport between many clients, with the
+     * specified parameters of this builder.
+     *
+     * @param queueSize the maximum amount of unprocessed messages, for all the clients of the hub.
+     * @return A {@link StatsDHub} with the specified queue size.
+     * @see #buildHub()
+     */
+    public StatsDHub buildHub(int queueSize) {
+        final Telemetry telemetry = createTelemetry();
+        final Protocol protocol = createProtocol(telemetry, true);
+        final NonBlockingStatsDClient transport = new NonBlockingStatsDClient(prefix, queueSize,
+            constantTags, errorHandler, protocol, telemetry);
+        register(transport, protocol);
+        return new StatsDHub(transport);
     }
 
     /**
@@ -136,8 +457,10 @@ public final class StatsDClientBuilder {
      * @return A {@link ConcurrentStatsDClient} with the specified wait time.
      */
     public StatsDClient buildConcurrent(long waitResolution) {
-        return new ConcurrentStatsDClient(prefix, waitResolution, constantTags, errorHandler,
-            createProtocol());
+        final Telemetry telemetry = createTelemetry();
+        final Protocol protocol = createProtocol(telemetry, true);
+        return register(new ConcurrentStatsDClient(prefix, waitResolution, constantTags,
+            errorHandler, protocol, telemetry), protocol);
     }
 
     /**
@@ -157,7 +480,9 @@ public final class StatsDClientBuilder {
      * @return A {@link BlockingStatsDClient} with the specified autoflush behavior.
      */
     public StatsDClient buildBlocking(boolean autoflush) {
-        return new BlockingStatsDClient(prefix, autoflush, constantTags, errorHandler,
-            createProtocol());
+        final Telemetry telemetry = createTelemetry();
+        final Protocol protocol = createProtocol(telemetry, false);
+        return register(new BlockingStatsDClient(prefix, autoflush, constantTags, errorHandler,
+            protocol, telemetry), protocol);
     }
 }
@@ -0,0 +1,108 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+
+/**
+ * Management interface of a {@link StatsDClient}, registered in the platform MBean server when
+ * the client is built with {@link StatsDClientBuilder#jmx()}. Allows to inspect the client
+ * internals on a running JVM without waiting for the telemetry to be reported.
+ *
+ * <p>The beans are registered under {@code com.timgroup.statsd:type=StatsDClient,prefix=...,id=...}
+ * and unregistered when the client is stopped.</p>
+ */
+public interface StatsDClientMXBean {
+
+    /**
+     * @return the number of messages waiting in the client queue. This may be an expensive
+     * operation for a {@link ConcurrentStatsDClient}.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the maximum number of messages the client queue can hold, 0 if the client has no
+     * queue.
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the number of metrics received by the client since its creation.
+     */
+    long getMetrics();
+
+    /**
+     * @return the number of metrics dropped because the client queue was full.
+     */
+    long getMetricsDroppedQueueFull();
+
+    /**
+     * @return the number of metrics dropped because the transport failed to send them.
+     */
+    long getMetricsDroppedSendError();
+
+    /**
+     * @return the number of metrics dropped because their packet was over the pacing rate of a
+     *     blocking client.
+     */
+    long getMetricsDroppedPaced();
+
+    /**
+     * @return the number of events dropped because their lane was full, 0 for a {@link
+     * BlockingStatsDClient}.
+     */
+    long getEventsDroppedQueueFull();
+
+    /**
+     * @return the number of service checks dropped because their lane was full, 0 for a {@link
+     * BlockingStatsDClient}.
+     */
+    long getServiceChecksDroppedQueueFull();
+
+    /**
+     * @return the number of bytes sent by the transport.
+     */
+    long getBytesSent();
+
+    /**
+     * @return the number of packets sent by the transport.
+     */
+    long getPacketsSent();
+
+    /**
+     * @return the number of packets the transport failed to send.
+     */
+    long getPacketsDropped();
+
+    /**
+     * @return the average ratio between the size of the packets sent and the maximum packet size,
+     * between 0 and 1.
+     */
+    double getAveragePacketFill();
+
+    /**
+     * @return the maximum size of the packets sent, in bytes.
+     */
+    int getPacketSize();
+
+    /**
+     * @return the number of times the client flushed its transport.
+     */
+    long getFlushes();
+
+    /**
+     * @return the time of the last flush, in millis since epoch, 0 if the client never flushed.
+     */
+    long getLastFlushTime();
+
+    /**
+     * @return the last address the transport resolved for the agent, null if unknown.
+     */
+    String getAgentAddress();
+
+    /**
+     * Force the client to send its buffered metrics. With a background client, the flush is done
+     * asynchronously by the IO thread. Does nothing with a {@link BlockingStatsDClient}, whose
+     * protocol is written to by the application threads and is not thread-safe: the client flushes
+     * on its own with autoflush, or when its owner calls {@link BlockingStatsDClient#flush()}.
+     */
+    void flush() throws IOException;
+}
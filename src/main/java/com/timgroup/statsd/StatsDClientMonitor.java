@@ -0,0 +1,133 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * The {@link StatsDClientMXBean} implementation, reading the state of a {@link
+ * DefaultStatsDClient} and its {@link Telemetry}.
+ */
+class StatsDClientMonitor implements StatsDClientMXBean {
+
+    private final DefaultStatsDClient client;
+    private final Telemetry telemetry;
+
+    StatsDClientMonitor(DefaultStatsDClient client) {
+        this.client = client;
+        this.telemetry = client.telemetry;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return client.queueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return client.queueCapacity();
+    }
+
+    @Override
+    public long getMetrics() {
+        return telemetry.getMetrics();
+    }
+
+    @Override
+    public long getMetricsDroppedQueueFull() {
+        return telemetry.getDropped(Telemetry.DropReason.QUEUE_FULL);
+    }
+
+    @Override
+    public long getMetricsDroppedSendError() {
+        return telemetry.getDropped(Telemetry.DropReason.SEND_ERROR);
+    }
+
+    @Override
+    public long getMetricsDroppedPaced() {
+        return telemetry.getDropped(Telemetry.DropReason.PACED);
+    }
+
+    @Override
+    public long getEventsDroppedQueueFull() {
+        return telemetry.getDropped(Lane.EVENT);
+    }
+
+    @Override
+    public long getServiceChecksDroppedQueueFull() {
+        return telemetry.getDropped(Lane.SERVICE_CHECK);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return telemetry.getBytesSent();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return telemetry.getPacketsSent();
+    }
+
+    @Override
+    public long getPacketsDropped() {
+        return telemetry.getPacketsDropped();
+    }
+
+    @Override
+    public double getAveragePacketFill() {
+        final long packets = telemetry.getPacketsSent();
+        if (packets == 0) {
+            return 0;
+        }
+        return (double) telemetry.getBytesSent() / packets / client.packetSizeBytes();
+    }
+
+    @Override
+    public int getPacketSize() {
+        return client.packetSizeBytes();
+    }
+
+    @Override
+    public long getFlushes() {
+        return telemetry.getFlushes();
+    }
+
+    @Override
+    public long getLastFlushTime() {
+        return telemetry.getLastFlushMillis();
+    }
+
+    @Override
+    public String getAgentAddress() {
+        final InetSocketAddress address = telemetry.getAgentAddress();
+        return address == null ? null : address.toString();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        client.requestFlush();
+    }
+
+    /**
+     * The {@link BackgroundStatsDClientMXBean} implementation.
+     */
+    static final class Background extends StatsDClientMonitor
+        implements BackgroundStatsDClientMXBean {
+
+        private final BackgroundStatsDClient client;
+
+        Background(BackgroundStatsDClient client) {
+            super(client);
+            this.client = client;
+        }
+
+        @Override
+        public long getFlushInterval() {
+            return client.getFlushInterval();
+        }
+
+        @Override
+        public void setFlushInterval(long flushInterval) {
+            client.setFlushInterval(flushInterval);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.timgroup.statsd;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A transport shared by many clients: one queue, one IO thread and one socket for all of them.
+ *
+ * <p>Applications hosting many modules, each with its own prefix and constant tags, would
+ * otherwise run one IO thread and one socket per client, each sending its own partially filled
+ * packets. The clients of a hub keep their own prefix and constant tags, but their metrics are
+ * packed into common packets.</p>
+ *
+ * <pre>
+ *   StatsDHub hub = new StatsDClientBuilder().hostname("localhost").port(8125).buildHub(100000);
+ *   StatsDClient db = hub.newClient("db", "module:db");
+ *   StatsDClient web = hub.newClient("web", "module:web");
+ * </pre>
+ *
+ * <p>Stopping a client of the hub unregisters it and cancels the gauges registered through it; the
+ * transport is stopped, after sending the pending metrics, by {@link #stop()}.</p>
+ */
+public final class StatsDHub implements Closeable {
+
+    private final DefaultStatsDClient transport;
+    private final Set<ChildStatsDClient> clients =
+        Collections.newSetFromMap(new ConcurrentHashMap<ChildStatsDClient, Boolean>());
+
+    StatsDHub(DefaultStatsDClient transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Create a client sending its metrics through this hub.
+     *
+     * @param prefix the prefix to apply to keys sent via this client
+     * @param constantTags tags to be added to all content sent via this client
+     * @return a client sharing the transport of this hub
+     */
+    public StatsDClient newClient(String prefix, String... constantTags) {
+        final ChildStatsDClient client = new ChildStatsDClient(prefix, constantTags, transport,
+            this);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * @return the number of clients created by this hub and not stopped yet.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    void unregister(ChildStatsDClient client) {
+        clients.remove(client);
+    }
+
+    /**
+     * Send the pending metrics and stop the transport. The clients of the hub must not be used
+     * afterwards.
+     */
+    public void stop() {
+        clients.clear();
+        transport.stop();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+}
@@ -0,0 +1,49 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A monotonic counter spread over several cells to reduce contention when incremented by many
+ * threads. Each thread is mapped to a cell by its id, and cells are padded so that two of them
+ * never share a cache line. Reading the counter sums all the cells and is therefore more
+ * expensive than incrementing it.
+ */
+final class StripedCounter {
+
+    /**
+     * Number of longs between two cells, so that each cell sits on its own 64 bytes cache line.
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripeCount();
+    private static final int MASK = STRIPES - 1;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    private static int stripeCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(final long delta) {
+        cells.getAndAdd(((int) Thread.currentThread().getId() & MASK) * PADDING, delta);
+    }
+
+    /**
+     * @return the sum of all the cells. Concurrent updates may or may not be reflected.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
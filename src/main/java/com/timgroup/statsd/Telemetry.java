@@ -0,0 +1,362 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Self-telemetry of a {@link StatsDClient}: keeps track of what the client does with the metrics
+ * it receives and periodically reports it as {@code datadog.dogstatsd.client.*} metrics on the
+ * same {@link Protocol} as the regular traffic.
+ *
+ * <p>Counters are cumulative and cheap to update from any thread. The report is done by whichever
+ * thread performs the IO for the client (the background thread, or the caller thread for a {@link
+ * BlockingStatsDClient}) when {@link #isDue(long)} says so; each report carries the delta since the
+ * previous one.</p>
+ *
+ * <p>When enabled, a sample of the calls to the client API are timed into a {@link
+ * LatencyHistogram}, whose percentiles over the report interval are also reported.</p>
+ */
+final class Telemetry {
+
+    static final String METRIC_PREFIX = "datadog.dogstatsd.client.";
+
+    /**
+     * Telemetry instance which records nothing and never reports.
+     */
+    static final Telemetry DISABLED = new Telemetry(0, null, 0, false);
+
+    /**
+     * Returned by {@link #startCall()} when the call is not timed.
+     */
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /**
+     * The reason why a metric did not reach the transport.
+     */
+    enum DropReason {
+        /**
+         * The client queue was full.
+         */
+        QUEUE_FULL("queue_full"),
+        /**
+         * The {@link Protocol} failed to send the metric.
+         */
+        SEND_ERROR("send_error"),
+        /**
+         * The packet of the metric was over the pacing rate.
+         */
+        PACED("paced");
+
+        private final String tag;
+
+        DropReason(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final boolean enabled;
+    private final long intervalNanos;
+    private final String tags;
+    private final AtomicLong nextReport;
+
+    private final StripedCounter metrics = new StripedCounter();
+    private final StripedCounter[] dropped = new StripedCounter[DropReason.values().length];
+    private final StripedCounter serviceChecksDropped = new StripedCounter();
+    private final StripedCounter eventsDropped = new StripedCounter();
+    private final StripedCounter bytesSent = new StripedCounter();
+    private final StripedCounter packetsSent = new StripedCounter();
+    private final StripedCounter packetsDropped = new StripedCounter();
+    private final StripedCounter flushes = new StripedCounter();
+    private final StripedCounter ioBusyNanos = new StripedCounter();
+    private volatile long lastFlushMillis;
+    private volatile InetSocketAddress agentAddress;
+
+    private final LatencyHistogram callerLatency;
+    private final int callerLatencySampleMask;
+    /**
+     * State of the caller latency histogram at the last report, guarded by {@code this}.
+     */
+    private LatencyHistogram.Snapshot reportedCallerLatency;
+
+    /**
+     * Value of each counter at the last report, guarded by {@code this}.
+     */
+    private final long[] reported = new long[8 + DropReason.values().length];
+
+    /**
+     * @param intervalMillis the time between two reports, 0 to only record the counters.
+     * @param constantTags the client constant tags, also applied to the telemetry metrics.
+     */
+    Telemetry(long intervalMillis, String[] constantTags) {
+        this(intervalMillis, constantTags, 0, true);
+    }
+
+    /**
+     * @param intervalMillis the time between two reports, 0 to only record the counters.
+     * @param constantTags the client constant tags, also applied to the telemetry metrics.
+     * @param callerLatencySampling time one call to the client API out of this many, rounded up
+     *     to a power of two; 0 to not time them.
+     */
+    Telemetry(long intervalMillis, String[] constantTags, int callerLatencySampling) {
+        this(intervalMillis, constantTags, callerLatencySampling, true);
+    }
+
+    private Telemetry(long intervalMillis, String[] constantTags, int callerLatencySampling,
+        boolean enabled) {
+        this.enabled = enabled;
+        if (callerLatencySampling > 0) {
+            callerLatency = new LatencyHistogram();
+            callerLatencySampleMask = callerLatencySampling == 1
+                ? 0 : Integer.highestOneBit(callerLatencySampling - 1) * 2 - 1;
+            reportedCallerLatency = callerLatency.snapshot();
+        } else {
+            callerLatency = null;
+            callerLatencySampleMask = 0;
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.nextReport = new AtomicLong(System.nanoTime() + intervalNanos);
+        for (int i = 0; i < dropped.length; i++) {
+            dropped[i] = new StripedCounter();
+        }
+        final StringBuilder sb = new StringBuilder();
+        DefaultStatsDClient.tagString(constantTags, "|#client:java", sb);
+        tags = sb.toString();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void onMetric() {
+        if (enabled) {
+            metrics.increment();
+        }
+    }
+
+    void onMetric(int count) {
+        if (enabled) {
+            metrics.add(count);
+        }
+    }
+
+    void onDropped(DropReason reason) {
+        onDropped(reason, 1);
+    }
+
+    void onDropped(DropReason reason, int count) {
+        if (enabled) {
+            dropped[reason.ordinal()].add(count);
+        }
+    }
+
+    /**
+     * Record a message dropped because its lane was full.
+     */
+    void onDropped(Lane lane) {
+        if (!enabled) {
+            return;
+        }
+        switch (lane) {
+            case SERVICE_CHECK:
+                serviceChecksDropped.increment();
+                break;
+            case EVENT:
+                eventsDropped.increment();
+                break;
+            default:
+                dropped[DropReason.QUEUE_FULL.ordinal()].increment();
+        }
+    }
+
+    void onPacketSent(int bytes) {
+        if (enabled) {
+            packetsSent.increment();
+            bytesSent.add(bytes);
+        }
+    }
+
+    void onPacketDropped() {
+        if (enabled) {
+            packetsDropped.increment();
+        }
+    }
+
+    void onFlush() {
+        if (enabled) {
+            flushes.increment();
+            lastFlushMillis = System.currentTimeMillis();
+        }
+    }
+
+    void onAddressResolved(InetSocketAddress address) {
+        if (enabled) {
+            agentAddress = address;
+        }
+    }
+
+    void onIoBusy(long nanos) {
+        if (enabled) {
+            ioBusyNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Start timing a call to the client API, if it is sampled.
+     *
+     * @return the start time to pass to {@link #endCall(long)}, or {@link #NOT_SAMPLED}.
+     */
+    long startCall() {
+        if (callerLatency == null
+            || (ThreadLocalRandom.current().nextInt() & callerLatencySampleMask) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    void endCall(long start) {
+        if (start != NOT_SAMPLED) {
+            callerLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the histogram of the sampled caller-side latencies, null if they are not recorded.
+     */
+    LatencyHistogram getCallerLatency() {
+        return callerLatency;
+    }
+
+    long getMetrics() {
+        return metrics.sum();
+    }
+
+    long getDropped(DropReason reason) {
+        return dropped[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of messages dropped because the given lane was full.
+     */
+    long getDropped(Lane lane) {
+        switch (lane) {
+            case SERVICE_CHECK:
+                return serviceChecksDropped.sum();
+            case EVENT:
+                return eventsDropped.sum();
+            default:
+                return getDropped(DropReason.QUEUE_FULL);
+        }
+    }
+
+    long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+    long getPacketsDropped() {
+        return packetsDropped.sum();
+    }
+
+    long getFlushes() {
+        return flushes.sum();
+    }
+
+    long getIoBusyNanos() {
+        return ioBusyNanos.sum();
+    }
+
+    /**
+     * @return the time of the last flush in millis since epoch, 0 if never flushed.
+     */
+    long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    /**
+     * @return the last address the transport resolved for the agent, null if unknown.
+     */
+    InetSocketAddress getAgentAddress() {
+        return agentAddress;
+    }
+
+    /**
+     * Tells whether a report is due, and if so reserve it for the calling thread so that
+     * concurrent callers do not report twice.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return true if the caller must call {@link #report(Protocol, int)}
+     */
+    boolean isDue(long nowNanos) {
+        if (!enabled || intervalNanos <= 0) {
+            return false;
+        }
+        final long next = nextReport.get();
+        return nowNanos - next >= 0 && nextReport.compareAndSet(next, nowNanos + intervalNanos);
+    }
+
+    /**
+     * @param deadlineNanos the latest {@link System#nanoTime()} the caller wants to be woken at.
+     * @return the earliest of the deadline and the next report.
+     */
+    long nextDue(long deadlineNanos) {
+        if (!enabled || intervalNanos <= 0) {
+            return deadlineNanos;
+        }
+        final long next = nextReport.get();
+        return next - deadlineNanos < 0 ? next : deadlineNanos;
+    }
+
+    /**
+     * Send the telemetry metrics to the given protocol. The caller is responsible for flushing it.
+     *
+     * @param protocol the client protocol
+     * @param queueDepth the current number of metrics waiting to be sent
+     */
+    synchronized void report(Protocol protocol, int queueDepth) throws IOException {
+        int i = 0;
+        sendCount(protocol, "metrics", metrics.sum(), i++, tags);
+        for (DropReason reason : DropReason.values()) {
+            sendCount(protocol, "metrics_dropped", dropped[reason.ordinal()].sum(), i++,
+                tags + ",reason:" + reason.tag);
+        }
+        sendCount(protocol, Lane.SERVICE_CHECK.telemetryName + "_dropped",
+            serviceChecksDropped.sum(), i++, tags + ",reason:queue_full");
+        sendCount(protocol, Lane.EVENT.telemetryName + "_dropped", eventsDropped.sum(), i++,
+            tags + ",reason:queue_full");
+        sendCount(protocol, "bytes_sent", bytesSent.sum(), i++, tags);
+        sendCount(protocol, "packets_sent", packetsSent.sum(), i++, tags);
+        sendCount(protocol, "packets_dropped", packetsDropped.sum(), i++, tags);
+        sendCount(protocol, "flushes", flushes.sum(), i++, tags);
+        sendCount(protocol, "io_busy_ms",
+            TimeUnit.NANOSECONDS.toMillis(ioBusyNanos.sum()), i, tags);
+        protocol.send(METRIC_PREFIX + "queue_depth:" + queueDepth + "|g" + tags);
+        if (callerLatency != null) {
+            final LatencyHistogram.Snapshot current = callerLatency.snapshot();
+            final LatencyHistogram.Snapshot interval = current.minus(reportedCallerLatency);
+            reportedCallerLatency = current;
+            if (interval.getCount() > 0) {
+                sendLatency(protocol, "p50", interval.getValueAtPercentile(50));
+                sendLatency(protocol, "p99", interval.getValueAtPercentile(99));
+                sendLatency(protocol, "p999", interval.getValueAtPercentile(99.9));
+                sendLatency(protocol, "max", interval.getMax());
+            }
+        }
+    }
+
+    private void sendLatency(Protocol protocol, String name, long nanos) throws IOException {
+        protocol.send(METRIC_PREFIX + "caller_latency_ns." + name + ':' + nanos + "|g" + tags);
+    }
+
+    private void sendCount(Protocol protocol, String name, long total, int index, String tags)
+        throws IOException {
+        final long delta = total - reported[index];
+        reported[index] = total;
+        protocol.send(METRIC_PREFIX + name + ':' + delta + "|c" + tags);
+    }
+}
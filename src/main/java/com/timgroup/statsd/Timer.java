@@ -0,0 +1,102 @@
+package com.timgroup.statsd;
+
+/**
+ * A reusable handle timing an operation with {@link System#nanoTime()}, and recording each
+ * duration as a fractional number of milliseconds. Create it once, with {@link
+ * StatsDClient#timer(String, String...)} or {@link StatsDClient#distributionTimer(String,
+ * String...)}, and keep it in a field.
+ *
+ * <p>Either pass the primitive token around, which never allocates:</p>
+ * <pre>
+ *   long start = timer.start();
+ *   ...
+ *   timer.stop(start);
+ * </pre>
+ *
+ * <p>or use a {@link Sample} in a try-with-resources block; the sample does not escape the block,
+ * so the JIT can usually replace it by its fields:</p>
+ * <pre>
+ *   try (Timer.Sample sample = timer.time()) {
+ *       ...
+ *   }
+ * </pre>
+ *
+ * <p>Timers are thread-safe.</p>
+ */
+public final class Timer {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * Timer which records nothing, shared by the {@link NoOpStatsDClient}.
+     */
+    static final Timer NO_OP = new Timer(new NoOpStatsDClient(), "", false, null);
+
+    private final StatsDClient client;
+    private final String aspect;
+    private final boolean distribution;
+    private final String[] tags;
+
+    Timer(StatsDClient client, String aspect, boolean distribution, String[] tags) {
+        this.client = client;
+        this.aspect = aspect;
+        this.distribution = distribution;
+        this.tags = tags;
+    }
+
+    /**
+     * @return the token to pass to {@link #stop(long)} at the end of the operation.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time elapsed since the given token.
+     *
+     * @param start the token returned by {@link #start()}
+     */
+    public void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record a duration measured elsewhere.
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (distribution) {
+            client.recordDistributionValue(aspect, nanos / NANOS_PER_MILLI, tags);
+        } else {
+            client.recordExecutionTime(aspect, nanos / NANOS_PER_MILLI, tags);
+        }
+    }
+
+    /**
+     * @return a sample recording the time elapsed until it is closed.
+     */
+    public Sample time() {
+        return new Sample(this, System.nanoTime());
+    }
+
+    /**
+     * A running measure of a {@link Timer}, recorded when closed. Closing it more than once
+     * records more than one duration.
+     */
+    public static final class Sample implements AutoCloseable {
+
+        private final Timer timer;
+        private final long start;
+
+        Sample(Timer timer, long start) {
+            this.timer = timer;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            timer.stop(start);
+        }
+    }
+}
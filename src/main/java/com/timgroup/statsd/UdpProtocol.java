@@ -1,58 +1,238 @@
 package com.timgroup.statsd;
 
 import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
 import java.util.concurrent.Callable;
 
 /**
  * The UDP implementation of the {@link Protocol} interface.
  *
+ * <p>Messages are packed into datagrams of up to the packet size, {@link
+ * Protocol#PACKET_SIZE_BYTES} by default, or picked from the destination by {@link
+ * #autoPacketSize(InetSocketAddress)}. A message
+ * which does not fit in an empty packet is sent apart: to the large payload protocol when one is
+ * configured, otherwise alone in a datagram of up to {@link #MAX_DATAGRAM_BYTES}.</p>
+ *
+ * <p>An optional {@link PacketPacer} caps the rate of the packets sent: once its burst is spent,
+ * the sending thread waits for it, or with a blocking client the packets over the rate are
+ * dropped and counted.</p>
+ *
+ * <p>The IO Buffer is a direct buffer from the {@link DirectBufferPool}, given back on {@link
+ * #close()}: the channel sends it without copying it first. The messages sent apart in their own
+ * datagram are written to a pooled direct buffer too.</p>
+ *
  * @author Pascal Gélinas
  */
 final class UdpProtocol implements Protocol {
 
-    private final ByteBuffer sendBuffer = ByteBuffer.allocate(
-        Protocol.PACKET_SIZE_BYTES);
+    /**
+     * The largest UDP payload over IPv4. The operating system may enforce a lower limit.
+     */
+    static final int MAX_DATAGRAM_BYTES = 65507;
+
+    /**
+     * The largest packet size picked automatically: the default size of the receive buffer of the
+     * Datadog Agent, which truncates larger datagrams.
+     */
+    static final int MAX_AUTO_PACKET_SIZE_BYTES = 8192;
+
+    /**
+     * The MTU of the interfaces without jumbo frames, over which the default packet size is kept
+     * since the path to the destination may have a lower MTU than the first hop.
+     */
+    private static final int ETHERNET_MTU = 1500;
+
+    private final ByteBuffer sendBuffer;
     private final Callable<InetSocketAddress> addressLookup;
     private final DatagramChannel clientChannel;
     private final StatsDClientErrorHandler handler;
+    private final Telemetry telemetry;
+    private final Protocol largePayloadProtocol;
+    private final PacketPacer pacer;
+    private final ClientEvents events = ClientEvents.INSTANCE;
+    /**
+     * Number of messages currently in the {@link #sendBuffer}.
+     */
+    private int bufferedMessages;
+    private InetSocketAddress lastAddress;
+    private boolean closed;
 
     UdpProtocol(Callable<InetSocketAddress> addressLookup,
         StatsDClientErrorHandler errorHandler) throws IOException {
+        this(addressLookup, errorHandler, Telemetry.DISABLED);
+    }
+
+    UdpProtocol(Callable<InetSocketAddress> addressLookup,
+        StatsDClientErrorHandler errorHandler, Telemetry telemetry) throws IOException {
+        this(addressLookup, errorHandler, telemetry, null, Protocol.PACKET_SIZE_BYTES);
+    }
+
+    UdpProtocol(Callable<InetSocketAddress> addressLookup,
+        StatsDClientErrorHandler errorHandler, Telemetry telemetry,
+        Protocol largePayloadProtocol, int packetSizeBytes) throws IOException {
+        this(addressLookup, errorHandler, telemetry, largePayloadProtocol, packetSizeBytes,
+            PacketPacer.UNLIMITED);
+    }
+
+    /**
+     * @param largePayloadProtocol the protocol sending the messages larger than a packet, null to
+     *     send them in a datagram of their own.
+     * @param packetSizeBytes the maximum size of the datagrams packing many messages.
+     * @param pacer the limits of the rate of the datagrams.
+     */
+    UdpProtocol(Callable<InetSocketAddress> addressLookup,
+        StatsDClientErrorHandler errorHandler, Telemetry telemetry,
+        Protocol largePayloadProtocol, int packetSizeBytes, PacketPacer pacer)
+        throws IOException {
+        if (packetSizeBytes <= 0 || packetSizeBytes > MAX_DATAGRAM_BYTES) {
+            throw new IllegalArgumentException("Packet size must be between 1 and "
+                + MAX_DATAGRAM_BYTES + ": " + packetSizeBytes);
+        }
         this.addressLookup = addressLookup;
+        this.telemetry = telemetry;
+        this.largePayloadProtocol = largePayloadProtocol;
+        this.pacer = pacer;
         if (errorHandler == null) {
             handler = DefaultStatsDClient.NO_OP_HANDLER;
         } else {
             handler = errorHandler;
         }
         clientChannel = DatagramChannel.open();
+        sendBuffer = DirectBufferPool.INSTANCE.acquire(packetSizeBytes);
+    }
+
+    /**
+     * @return the maximum size of the datagrams packing many messages, in bytes.
+     */
+    int packetSizeBytes() {
+        return sendBuffer.capacity();
+    }
+
+    /**
+     * Pick a packet size for the given destination: {@value #MAX_AUTO_PACKET_SIZE_BYTES} bytes over
+     * the loopback interface, the MTU of the outgoing interface less the IP and UDP headers when it
+     * has jumbo frames, up to {@value #MAX_AUTO_PACKET_SIZE_BYTES} bytes, and {@link
+     * Protocol#PACKET_SIZE_BYTES} otherwise or when the interface cannot be found.
+     */
+    static int autoPacketSize(InetSocketAddress destination) {
+        final InetAddress address = destination.getAddress();
+        if (address == null) {
+            return Protocol.PACKET_SIZE_BYTES;
+        }
+        if (address.isLoopbackAddress()) {
+            return MAX_AUTO_PACKET_SIZE_BYTES;
+        }
+        // Connecting a datagram socket selects the route without sending anything.
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.connect(destination);
+            final NetworkInterface nif = NetworkInterface.getByInetAddress(probe.getLocalAddress());
+            return nif == null ? Protocol.PACKET_SIZE_BYTES : packetSize(address, nif.getMTU());
+        } catch (IOException e) {
+            return Protocol.PACKET_SIZE_BYTES;
+        }
+    }
+
+    /**
+     * @return the packet size for the given destination over an interface of the given MTU.
+     */
+    static int packetSize(InetAddress destination, int mtu) {
+        if (mtu <= ETHERNET_MTU) {
+            return Protocol.PACKET_SIZE_BYTES;
+        }
+        // IPv4 header of 20 bytes or IPv6 header of 40 bytes, plus 8 bytes of UDP header.
+        final int headers = destination instanceof Inet6Address ? 48 : 28;
+        return Math.min(mtu - headers, MAX_AUTO_PACKET_SIZE_BYTES);
     }
 
     @Override
     public void close() throws IOException {
-        clientChannel.close();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        DirectBufferPool.INSTANCE.release(sendBuffer);
+        try {
+            clientChannel.close();
+        } finally {
+            if (largePayloadProtocol != null) {
+                largePayloadProtocol.close();
+            }
+        }
+    }
+
+    /**
+     * Fail once closed, rather than write to an IO Buffer given back to the pool.
+     */
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
     }
 
     /**
      * Add the specified StatsD-formatted String to the IO Buffer, if there are still available
      * space. If the message cannot fit in the buffer, the buffer is sent to the server via {@link
-     * #flush()} and then the message gets added to the buffer.
+     * #flush()} and then the message gets added to the buffer. A message larger than the buffer is
+     * sent apart.
      *
      * @param message The StatsD-formatted String.
      * @throws Exception if the addressLookup fails during the send.
      */
     @Override
     public void send(String message) throws IOException {
+        ensureOpen();
         final byte[] data = message.getBytes(Protocol.MESSAGE_CHARSET);
         if (sendBuffer.remaining() < (data.length + 1)) {
             flush();
+            if (data.length > sendBuffer.capacity()) {
+                sendOversized(message, data);
+                return;
+            }
         }
         if (sendBuffer.position() > 0) {
             sendBuffer.put((byte) '\n');
         }
         sendBuffer.put(data);
+        bufferedMessages++;
+    }
+
+    /**
+     * Send a message too large for the IO Buffer on its own, the IO Buffer being empty. The
+     * message is then owned by this protocol: when it cannot be sent, it is counted as dropped and
+     * reported to the handler, not thrown for the client to count it again.
+     */
+    private void sendOversized(String message, byte[] data) throws IOException {
+        if (largePayloadProtocol != null) {
+            largePayloadProtocol.send(message);
+            largePayloadProtocol.flush();
+            return;
+        }
+        if (data.length > MAX_DATAGRAM_BYTES) {
+            telemetry.onDropped(Telemetry.DropReason.SEND_ERROR);
+            handler.handle(new IOException("Message of " + data.length + " bytes exceeds the "
+                + "maximum datagram size of " + MAX_DATAGRAM_BYTES + " bytes"));
+            return;
+        }
+        bufferedMessages = 1;
+        // Pooled at a single capacity, whatever the size of the message.
+        final ByteBuffer packet = DirectBufferPool.INSTANCE.acquire(MAX_DATAGRAM_BYTES);
+        try {
+            packet.put(data);
+            packet.flip();
+            sendPacket(packet);
+        } catch (IOException e) {
+            // Already counted as dropped with the packet.
+            handler.handle(e);
+        } finally {
+            DirectBufferPool.INSTANCE.release(packet);
+        }
     }
 
     /**
@@ -62,30 +242,97 @@ final class UdpProtocol implements Protocol {
      */
     @Override
     public void flush() throws IOException {
+        ensureOpen();
+        if (sendBuffer.position() == 0) {
+            return;
+        }
+        try {
+            sendBuffer.flip();
+            sendPacket(sendBuffer);
+        } finally {
+            sendBuffer.clear();
+        }
+    }
+
+    /**
+     * Send the remaining bytes of the given buffer as one datagram.
+     */
+    private void sendPacket(ByteBuffer packet) throws IOException {
+        final boolean recording = events.isEnabled();
+        final InetSocketAddress address = resolve(recording);
+        final int sizeOfBuffer = packet.remaining();
+        if (!pacer.acquire(sizeOfBuffer)) {
+            dropBuffer(Telemetry.DropReason.PACED);
+            return;
+        }
+
+        final Object sendEvent = recording ? events.beginSend() : null;
+        final int sentBytes;
+        try {
+            sentBytes = clientChannel.send(packet, address);
+        } catch (IOException e) {
+            dropBuffer();
+            throw e;
+        }
+        afterSend(address, packet, sizeOfBuffer, sentBytes, recording, sendEvent);
+    }
+
+    private InetSocketAddress resolve(boolean recording) throws IOException {
+        final Object resolution = recording ? events.beginResolution() : null;
         final InetSocketAddress address;
         try {
             address = addressLookup.call();
         } catch (Exception e) {
+            dropBuffer();
             throw new IOException("Unable to resolve address", e);
         }
-        final int sizeOfBuffer = sendBuffer.position();
-        sendBuffer.flip();
+        if (!address.equals(lastAddress)) {
+            if (recording) {
+                events.endResolution(resolution, lastAddress, address);
+            }
+            lastAddress = address;
+            telemetry.onAddressResolved(address);
+        }
+        return address;
+    }
 
-        final int sentBytes = clientChannel.send(sendBuffer, address);
-        sendBuffer.limit(sendBuffer.capacity());
-        sendBuffer.rewind();
+    private void afterSend(InetSocketAddress address, ByteBuffer packet, int sizeOfBuffer,
+        int sentBytes, boolean recording, Object sendEvent) {
+        if (recording) {
+            events.endSend(sendEvent, address, sizeOfBuffer, bufferedMessages,
+                sizeOfBuffer == sentBytes);
+        }
 
         if (sizeOfBuffer != sentBytes) {
+            dropBuffer();
             handler.handle(
                 new IOException(
                     String.format(
                         "Could not send entirely stat %s to host %s:%d. Only sent %d bytes "
                             + "out of %d bytes",
-                        sendBuffer.toString(),
+                        packet.toString(),
                         address.getHostName(),
                         address.getPort(),
                         sentBytes,
                         sizeOfBuffer)));
+        } else {
+            telemetry.onPacketSent(sentBytes);
+            bufferedMessages = 0;
         }
     }
+
+    /**
+     * Discard the content of the IO Buffer after a failed send, so that the next messages start a
+     * fresh packet.
+     */
+    private void dropBuffer() {
+        dropBuffer(Telemetry.DropReason.SEND_ERROR);
+    }
+
+    private void dropBuffer(Telemetry.DropReason reason) {
+        telemetry.onPacketDropped();
+        telemetry.onDropped(reason, bufferedMessages);
+        bufferedMessages = 0;
+        sendBuffer.clear();
+    }
 }
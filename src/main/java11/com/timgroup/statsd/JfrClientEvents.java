@@ -0,0 +1,171 @@
+package com.timgroup.statsd;
+
+import java.net.InetSocketAddress;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder implementation of the {@link ClientEvents}, loaded by reflection on JVMs
+ * supporting JFR. Whether the timed events are enabled is cached, and refreshed whenever a
+ * recording starts or stops, so that the transport skips them at the cost of a volatile read when
+ * nothing records them. The events are timed by JFR itself, between their begin and end.
+ */
+final class JfrClientEvents extends ClientEvents {
+
+    private final EventType packetFlush;
+    private final EventType slowSend;
+    private final EventType addressResolution;
+    private volatile boolean enabled;
+
+    JfrClientEvents() {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("JFR is not available on this JVM");
+        }
+        packetFlush = EventType.getEventType(PacketFlushEvent.class);
+        slowSend = EventType.getEventType(SlowSendEvent.class);
+        addressResolution = EventType.getEventType(AddressResolutionEvent.class);
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                refresh();
+            }
+        });
+        refresh();
+    }
+
+    private void refresh() {
+        enabled = packetFlush.isEnabled() || slowSend.isEnabled()
+            || addressResolution.isEnabled();
+    }
+
+    @Override
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    Object beginSend() {
+        final SendEvents send = new SendEvents();
+        send.flush.begin();
+        send.slow.begin();
+        return send;
+    }
+
+    @Override
+    void endSend(Object state, InetSocketAddress address, int bytes, int metrics,
+        boolean complete) {
+        final SendEvents send = (SendEvents) state;
+        send.flush.end();
+        send.slow.end();
+        if (complete && send.flush.shouldCommit()) {
+            send.flush.bytes = bytes;
+            send.flush.metrics = metrics;
+            send.flush.commit();
+        }
+        if (send.slow.shouldCommit()) {
+            send.slow.address = String.valueOf(address);
+            send.slow.bytes = bytes;
+            send.slow.commit();
+        }
+    }
+
+    @Override
+    Object beginResolution() {
+        final AddressResolutionEvent event = new AddressResolutionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endResolution(Object state, InetSocketAddress previous, InetSocketAddress current) {
+        final AddressResolutionEvent event = (AddressResolutionEvent) state;
+        event.end();
+        if (event.shouldCommit()) {
+            event.previousAddress = previous == null ? null : previous.toString();
+            event.address = String.valueOf(current);
+            event.commit();
+        }
+    }
+
+    @Override
+    void queueOverflow(Lane lane, int queueCapacity) {
+        final QueueOverflowEvent event = new QueueOverflowEvent();
+        if (event.isEnabled()) {
+            event.lane = lane.telemetryName;
+            event.queueCapacity = queueCapacity;
+            event.commit();
+        }
+    }
+
+    /**
+     * The events timing a single send.
+     */
+    private static final class SendEvents {
+        final PacketFlushEvent flush = new PacketFlushEvent();
+        final SlowSendEvent slow = new SlowSendEvent();
+    }
+
+    @Name("com.timgroup.statsd.PacketFlush")
+    @Label("StatsD Packet Flush")
+    @Description("A packet of metrics has been sent to the agent")
+    @Category("StatsD")
+    @StackTrace(false)
+    static final class PacketFlushEvent extends Event {
+        @Label("Size")
+        @DataAmount
+        int bytes;
+
+        @Label("Metrics")
+        int metrics;
+    }
+
+    @Name("com.timgroup.statsd.QueueOverflow")
+    @Label("StatsD Queue Overflow")
+    @Description("A message has been dropped because the client queue of its lane was full")
+    @Category("StatsD")
+    static final class QueueOverflowEvent extends Event {
+        @Label("Lane")
+        String lane;
+
+        @Label("Queue Capacity")
+        int queueCapacity;
+    }
+
+    @Name("com.timgroup.statsd.SlowSend")
+    @Label("StatsD Slow Send")
+    @Description("Sending a packet to the agent took longer than the threshold of the recording")
+    @Category("StatsD")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class SlowSendEvent extends Event {
+        @Label("Address")
+        String address;
+
+        @Label("Size")
+        @DataAmount
+        int bytes;
+    }
+
+    @Name("com.timgroup.statsd.AddressResolution")
+    @Label("StatsD Address Resolution")
+    @Description("The agent host name resolved to a new address")
+    @Category("StatsD")
+    @StackTrace(false)
+    static final class AddressResolutionEvent extends Event {
+        @Label("Previous Address")
+        String previousAddress;
+
+        @Label("Address")
+        String address;
+    }
+}
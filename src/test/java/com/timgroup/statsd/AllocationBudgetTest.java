@@ -0,0 +1,579 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Guards the bytes allocated per call of each public {@link StatsDClient} method against
+ * regressions. The calls go through a {@link BlockingStatsDClient} without autoflush, writing to
+ * a sink {@link Protocol}, so that only the caller-side work is measured.
+ *
+ * <p>The budgets are checked in {@code allocation-budget.properties}, next to this class. When a
+ * change legitimately reduces the allocation, lower the budget with it; when a method is added to
+ * {@link StatsDClient}, add its call and budget here.</p>
+ *
+ * <p>Skipped on JVMs which cannot measure the allocated bytes per thread, and on the JVMs storing
+ * all strings in UTF-16 (JDK 7 and 8, or {@code -XX:-CompactStrings}): the budgets are calibrated
+ * with compact strings, and the JDK code differs too, e.g. {@link String#replace(CharSequence,
+ * CharSequence)} compiles a regular expression on JDK 8.</p>
+ */
+@RunWith(Parameterized.class)
+public class AllocationBudgetTest {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 10000;
+
+    private static final String[] TAGS = {"env:prod", "shard:3"};
+    private static final long[] LONGS = new long[16];
+    private static final double[] DOUBLES = new double[16];
+
+    static {
+        for (int i = 0; i < LONGS.length; i++) {
+            LONGS[i] = 1000 + i * 37;
+            DOUBLES[i] = 1.5 + i * 0.37;
+        }
+    }
+
+    private static Properties budgets;
+    private static StatsDClient client;
+    private static Event event;
+    private static ServiceCheck serviceCheck;
+    private static Timer timer;
+    private static MetricBatch batch;
+
+    private static final LongSupplier LONG_SUPPLIER = new LongSupplier() {
+        @Override
+        public long getAsLong() {
+            return 42L;
+        }
+    };
+    private static final DoubleSupplier DOUBLE_SUPPLIER = new DoubleSupplier() {
+        @Override
+        public double getAsDouble() {
+            return 4.2;
+        }
+    };
+
+    /**
+     * One call of the client API.
+     */
+    abstract static class Call {
+        private final String name;
+
+        Call(String name) {
+            this.name = name;
+        }
+
+        abstract void invoke(StatsDClient client);
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Discards the messages, keeping a reference on the last one so that its formatting cannot be
+     * optimized away.
+     */
+    static final class SinkProtocol implements Protocol {
+        volatile String last;
+
+        @Override
+        public void send(String message) {
+            last = message;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Parameters(name = "{0}")
+    public static Iterable<Object[]> calls() {
+        final List<Object[]> calls = new ArrayList<Object[]>();
+        calls.add(call(new Call("count.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.count("my.counter", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("count.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.count("my.counter", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("count.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.count("my.counter", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("count.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.count("my.counter", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("incrementCounter") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.incrementCounter("my.counter", TAGS);
+            }
+        }));
+        calls.add(call(new Call("incrementCounter.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.incrementCounter("my.counter", 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("increment") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.increment("my.counter", TAGS);
+            }
+        }));
+        calls.add(call(new Call("increment.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.increment("my.counter", 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("decrementCounter") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.decrementCounter("my.counter", TAGS);
+            }
+        }));
+        calls.add(call(new Call("decrementCounter.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.decrementCounter("my.counter", 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("decrement") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.decrement("my.counter", TAGS);
+            }
+        }));
+        calls.add(call(new Call("decrement.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.decrement("my.counter", 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordGaugeValue.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordGaugeValue("my.gauge", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordGaugeValue.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordGaugeValue("my.gauge", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gauge.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gauge("my.gauge", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gauge.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gauge("my.gauge", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordGaugeValue.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordGaugeValue("my.gauge", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordGaugeValue.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordGaugeValue("my.gauge", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gauge.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gauge("my.gauge", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gauge.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gauge("my.gauge", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("countWithTimestamp.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.countWithTimestamp("my.counter", 42L, 1700000000L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("countWithTimestamp.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.countWithTimestamp("my.counter", 4.2, 1700000000L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gaugeWithTimestamp.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gaugeWithTimestamp("my.gauge", 42L, 1700000000L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("gaugeWithTimestamp.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.gaugeWithTimestamp("my.gauge", 4.2, 1700000000L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTime") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTime("my.timer", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTime.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTime("my.timer", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("time") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.time("my.timer", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("time.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.time("my.timer", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTime.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTime("my.timer", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTime.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTime("my.timer", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("timer.stop") {
+            @Override
+            void invoke(StatsDClient client) {
+                timer.stop(timer.start());
+            }
+        }));
+        calls.add(call(new Call("timer.sample") {
+            @Override
+            void invoke(StatsDClient client) {
+                // The expansion of a try-with-resources block around the timed code.
+                final Timer.Sample sample = timer.time();
+                try {
+                    // Timed block.
+                } finally {
+                    sample.close();
+                }
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValue.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValue("my.histogram", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValue.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValue("my.histogram", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("histogram.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.histogram("my.histogram", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("histogram.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.histogram("my.histogram", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValue.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValue("my.histogram", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValue.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValue("my.histogram", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("histogram.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.histogram("my.histogram", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("histogram.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.histogram("my.histogram", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValue.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValue("my.distribution", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValue.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValue("my.distribution", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("distribution.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.distribution("my.distribution", 4.2, TAGS);
+            }
+        }));
+        calls.add(call(new Call("distribution.double.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.distribution("my.distribution", 4.2, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValue.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValue("my.distribution", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValue.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValue("my.distribution", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("distribution.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.distribution("my.distribution", 42L, TAGS);
+            }
+        }));
+        calls.add(call(new Call("distribution.long.sampled") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.distribution("my.distribution", 42L, 1.0, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValues.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValues("my.values", LONGS, 0, LONGS.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordHistogramValues.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordHistogramValues("my.values", DOUBLES, 0, DOUBLES.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValues.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValues("my.values", LONGS, 0, LONGS.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordDistributionValues.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordDistributionValues("my.values", DOUBLES, 0, DOUBLES.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTimes.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTimes("my.values", LONGS, 0, LONGS.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordExecutionTimes.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordExecutionTimes("my.values", DOUBLES, 0, DOUBLES.length, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordEvent") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordEvent(event, TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordServiceCheckRun") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordServiceCheckRun(serviceCheck);
+            }
+        }));
+        calls.add(call(new Call("serviceCheck") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.serviceCheck(serviceCheck);
+            }
+        }));
+        calls.add(call(new Call("recordSetValue") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordSetValue("my.set", "user-4242", TAGS);
+            }
+        }));
+        calls.add(call(new Call("recordBatch") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.recordBatch(batch);
+            }
+        }));
+        calls.add(call(new Call("registerGauge.long") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.registerGauge("my.polled", LONG_SUPPLIER, TAGS).cancel();
+            }
+        }));
+        calls.add(call(new Call("registerGauge.double") {
+            @Override
+            void invoke(StatsDClient client) {
+                client.registerGauge("my.polled", DOUBLE_SUPPLIER, TAGS).cancel();
+            }
+        }));
+        return calls;
+    }
+
+    private static Object[] call(Call call) {
+        return new Object[] {call};
+    }
+
+    @Parameter
+    public Call call;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        budgets = new Properties();
+        final InputStream in = AllocationBudgetTest.class.getResourceAsStream(
+            "allocation-budget.properties");
+        assertNotNull("allocation-budget.properties is missing", in);
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+        client = new StatsDClientBuilder().prefix("my.prefix")
+            .constantTags("host:test", "team:metrics")
+            .customProtocol(new SinkProtocol())
+            .buildBlocking(false);
+        timer = client.timer("my.timer", TAGS);
+        event = Event.builder()
+            .withTitle("Deployment")
+            .withText("Version 2.6 deployed\non all hosts")
+            .withAggregationKey("deploy")
+            .withAlertType(Event.AlertType.INFO)
+            .build();
+        serviceCheck = ServiceCheck.builder()
+            .withName("my.service.check")
+            .withStatus(ServiceCheck.Status.OK)
+            .withMessage("all good")
+            .withTags(TAGS)
+            .build();
+        batch = new MetricBatch()
+            .count("my.counter", 42L, TAGS)
+            .gauge("my.gauge", 4.2, TAGS)
+            .time("my.timer", 42L, TAGS)
+            .distribution("my.distribution", 42L, TAGS);
+    }
+
+    /**
+     * @return true if the JVM stores the Latin-1 strings in one byte per char.
+     */
+    private static boolean compactStrings() {
+        final HotSpotDiagnosticMXBean hotSpot =
+            ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        if (hotSpot == null) {
+            return true;
+        }
+        try {
+            return Boolean.parseBoolean(hotSpot.getVMOption("CompactStrings").getValue());
+        } catch (final IllegalArgumentException e) {
+            // No such option before JDK 9: the strings are always UTF-16.
+            return false;
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        client.stop();
+    }
+
+    @Test
+    public void stays_within_budget() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        assumeTrue(compactStrings());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final String budget = budgets.getProperty(call.toString());
+        assertNotNull("no budget for " + call, budget);
+
+        for (int i = 0; i < WARMUP; i++) {
+            call.invoke(client);
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.invoke(client);
+        }
+        final long perCall = (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+
+        assertTrue(call + " allocated " + perCall + " bytes per call, over its budget of "
+            + budget, perCall <= Long.parseLong(budget));
+    }
+}
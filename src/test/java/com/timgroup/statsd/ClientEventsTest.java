@@ -0,0 +1,27 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ClientEventsTest {
+
+    @Test
+    public void falls_back_to_no_op_when_the_implementation_is_missing() {
+        assertSame(ClientEvents.NO_OP, ClientEvents.load("com.timgroup.statsd.MissingClientEvents"));
+    }
+
+    @Test
+    public void falls_back_to_no_op_when_the_implementation_is_not_client_events() {
+        assertSame(ClientEvents.NO_OP, ClientEvents.load("java.lang.Object"));
+    }
+
+    @Test
+    public void no_op_records_nothing() {
+        assertFalse(ClientEvents.NO_OP.isEnabled());
+        assertNull(ClientEvents.NO_OP.beginSend());
+        assertNull(ClientEvents.NO_OP.beginResolution());
+    }
+}
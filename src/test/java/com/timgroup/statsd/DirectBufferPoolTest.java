@@ -0,0 +1,82 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import org.junit.Test;
+
+public class DirectBufferPoolTest {
+
+    private final DirectBufferPool pool = new DirectBufferPool(2);
+
+    @Test
+    public void reuses_the_released_buffers() {
+        final ByteBuffer buffer = pool.acquire(100);
+        assertTrue(buffer.isDirect());
+        assertEquals(100, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        final ByteBuffer reused = pool.acquire(100);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertNotSame(buffer, pool.acquire(100));
+        assertEquals(200, pool.acquire(200).capacity());
+    }
+
+    @Test
+    public void keeps_a_bounded_number_of_buffers() {
+        for (int i = 0; i < 3; i++) {
+            pool.release(ByteBuffer.allocateDirect(100));
+        }
+        assertEquals(2, pool.size(100));
+        assertEquals(0, pool.size(200));
+    }
+
+    @Test
+    public void protocol_gives_its_buffer_back_on_close() throws Exception {
+        // A size no other test uses, for the pool is shared.
+        final int packetSize = 1237;
+        final int pooled = DirectBufferPool.INSTANCE.size(packetSize);
+        final UdpProtocol protocol = protocol(packetSize);
+        protocol.send("my.count:1|c");
+        protocol.close();
+        protocol.close();
+        assertEquals(pooled + 1, DirectBufferPool.INSTANCE.size(packetSize));
+    }
+
+    @Test(timeout = 5000L)
+    public void stopped_client_gives_its_buffer_back() {
+        // A size no other test uses, for the pool is shared.
+        final int packetSize = 1239;
+        final int pooled = DirectBufferPool.INSTANCE.size(packetSize);
+        for (int i = 0; i < 3; i++) {
+            final StatsDClient client = new StatsDClientBuilder()
+                .hostname("localhost")
+                .port(17258)
+                .packetSize(packetSize)
+                .buildNonBlocking();
+            client.count("my.count", 1);
+            client.stop();
+            // The next client takes the buffer back from the pool.
+            assertEquals(pooled + 1, DirectBufferPool.INSTANCE.size(packetSize));
+        }
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void protocol_fails_once_closed() throws Exception {
+        final UdpProtocol protocol = protocol(Protocol.PACKET_SIZE_BYTES);
+        protocol.close();
+        protocol.send("my.count:1|c");
+    }
+
+    private static UdpProtocol protocol(int packetSize) throws Exception {
+        return new UdpProtocol(
+            DefaultStatsDClient.staticStatsDAddressResolution("localhost", 17258), null,
+            Telemetry.DISABLED, null, packetSize);
+    }
+}
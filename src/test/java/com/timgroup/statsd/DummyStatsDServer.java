@@ -6,11 +6,13 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
 final class DummyStatsDServer {
-    private final List<String> messagesReceived = new ArrayList<String>();
+    private final List<String> messagesReceived =
+        Collections.synchronizedList(new ArrayList<String>());
     private final DatagramSocket server;
 
     public DummyStatsDServer(int port) throws SocketException {
@@ -20,9 +22,11 @@ final class DummyStatsDServer {
             public void run() {
                 while(!server.isClosed()) {
                     try {
-                        final DatagramPacket packet = new DatagramPacket(new byte[1500], 1500);
+                        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
                         server.receive(packet);
-                        for(String msg : new String(packet.getData(), Protocol.MESSAGE_CHARSET).split("\n")) {
+                        final String data = new String(packet.getData(), 0, packet.getLength(),
+                            Protocol.MESSAGE_CHARSET);
+                        for(String msg : data.split("\n")) {
                             messagesReceived.add(msg.trim());
                         }
                     } catch (IOException e) {
@@ -44,7 +48,9 @@ final class DummyStatsDServer {
     }
 
     public List<String> messagesReceived() {
-        return new ArrayList<String>(messagesReceived);
+        synchronized (messagesReceived) {
+            return new ArrayList<String>(messagesReceived);
+        }
     }
 
     public void close() {
@@ -0,0 +1,96 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class EventThrottleTest {
+
+    private final List<String> messages = new ArrayList<String>();
+    private final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+        .customProtocol(new ListProtocol(messages))
+        .eventThrottle(50)
+        .buildBlocking();
+
+    @Test
+    public void sends_first_occurrence_then_a_summary_per_window() throws Exception {
+        final Event down = Event.builder().withTitle("db down").withText("timeout")
+            .withAggregationKey("db").build();
+        for (int i = 0; i < 5; i++) {
+            client.recordEvent(down, "shard:1");
+        }
+        client.recordEvent(Event.builder().withTitle("cache down").withText("refused").build());
+        client.recordEvent(Event.builder().withTitle("cache down").withText("refused").build());
+
+        Thread.sleep(60);
+        // The blocking client sends the due summaries with the next message.
+        client.incrementCounter("calls");
+        client.stop();
+
+        assertThat(messages, contains(
+            "_e{7,7}:db down|timeout|k:db|#shard:1",
+            "_e{10,7}:cache down|refused",
+            "calls:1|c",
+            "_e{7,7}:db down|timeout|k:db|#suppressed_count:4,shard:1",
+            "_e{10,7}:cache down|refused|#suppressed_count:1"));
+    }
+
+    @Test
+    public void forgets_keys_quiet_for_a_window() throws Exception {
+        final Event down = Event.builder().withTitle("db down").withText("timeout").build();
+        client.recordEvent(down);
+        assertEquals(1, client.eventThrottle().size());
+
+        Thread.sleep(60);
+        client.incrementCounter("calls");
+        assertEquals(0, client.eventThrottle().size());
+        client.recordEvent(down);
+        client.stop();
+
+        assertThat(messages, contains(
+            "_e{7,7}:db down|timeout",
+            "calls:1|c",
+            "_e{7,7}:db down|timeout"));
+    }
+
+    @Test
+    public void summary_keeps_the_tags_of_the_last_occurrence() throws Exception {
+        final Event down = Event.builder().withTitle("db down").withText("timeout").build();
+        final String[] tags = {"shard:1"};
+        client.recordEvent(down, tags);
+        client.recordEvent(down, tags);
+        tags[0] = "shard:2";
+
+        Thread.sleep(60);
+        client.incrementCounter("calls");
+        client.stop();
+
+        assertThat(messages, contains(
+            "_e{7,7}:db down|timeout|#shard:1",
+            "calls:1|c",
+            "_e{7,7}:db down|timeout|#suppressed_count:1,shard:1"));
+    }
+
+    @Test
+    public void keys_by_client_and_by_aggregation_key_or_title() {
+        final EventThrottle throttle = new EventThrottle(60000);
+        final Event byTitle = Event.builder().withTitle("db").withText("down").build();
+        final Event byKey = Event.builder().withTitle("other").withText("down")
+            .withAggregationKey("db").build();
+
+        assertTrue(throttle.shouldSend(client, byTitle, null));
+        assertTrue(throttle.shouldSend(client, byKey, null));
+        assertTrue(throttle.shouldSend((DefaultStatsDClient) client.withPrefix("app"), byTitle,
+            null));
+        assertFalse(throttle.shouldSend(client, byTitle, null));
+        assertTrue(throttle.shouldSend((DefaultStatsDClient) client.withTags("env:prod"), byKey,
+            null));
+        assertEquals(4, throttle.size());
+    }
+}
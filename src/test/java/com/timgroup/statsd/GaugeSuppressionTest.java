@@ -0,0 +1,107 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class GaugeSuppressionTest {
+
+    private final List<String> messages = new ArrayList<String>();
+
+    @Test
+    public void sends_value_changes_only() {
+        final StatsDClient client = new StatsDClientBuilder().prefix("app")
+            .customProtocol(new ListProtocol(messages))
+            .gaugeHeartbeat(60000)
+            .buildBlocking();
+
+        client.recordGaugeValue("config.version", 3L);
+        client.gauge("config.version", 3L);
+        client.recordGaugeValue("config.version", 3L, "shard:1");
+        client.recordGaugeValue("config.version", 4L);
+        client.recordGaugeValue("config.version", 4L, new String[] {});
+        client.recordGaugeValue("load", 0.5);
+        client.recordGaugeValue("load", 0.5, 1.0);
+        client.recordGaugeValue("load", 0.25);
+        client.withPrefix("db").recordGaugeValue("load", 0.25);
+        client.stop();
+
+        assertThat(messages, contains(
+            "app.config.version:3|g",
+            "app.config.version:3|g|#shard:1",
+            "app.config.version:4|g",
+            "app.load:0.5|g",
+            "app.load:0.25|g",
+            "app.db.load:0.25|g"));
+    }
+
+    @Test
+    public void timestamped_gauges_are_always_sent() {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .gaugeHeartbeat(60000)
+            .buildBlocking();
+
+        client.gaugeWithTimestamp("backlog", 3L, 1700000000L);
+        client.gaugeWithTimestamp("backlog", 3L, 1700000010L);
+        client.stop();
+
+        assertEquals(2, messages.size());
+    }
+
+    private static boolean shouldSend(GaugeSuppressor suppressor, String aspect, String[] tags,
+        boolean fractional, long bits) {
+        final GaugeSuppressor.State gauge =
+            suppressor.changed("", null, aspect, tags, fractional, bits);
+        if (gauge == GaugeSuppressor.UNCHANGED) {
+            return false;
+        }
+        gauge.sent(bits);
+        return true;
+    }
+
+    @Test
+    public void resends_after_the_heartbeat_and_evicts_idle_gauges() throws Exception {
+        final GaugeSuppressor suppressor = new GaugeSuppressor(20);
+
+        assertTrue(shouldSend(suppressor, "pool.max", null, false, 42L));
+        assertFalse(shouldSend(suppressor, "pool.max", null, false, 42L));
+        // A double with the same bits is another gauge.
+        assertTrue(shouldSend(suppressor, "pool.max", null, true, 42L));
+        Thread.sleep(30);
+        assertTrue(shouldSend(suppressor, "pool.max", null, false, 42L));
+        assertEquals(2, suppressor.size());
+
+        Thread.sleep(50);
+        shouldSend(suppressor, "other", null, false, 1L);
+        assertEquals(1, suppressor.size());
+    }
+
+    @Test
+    public void value_not_recorded_as_sent_is_not_suppressed() {
+        final GaugeSuppressor suppressor = new GaugeSuppressor(60000);
+
+        assertNotSame(GaugeSuppressor.UNCHANGED,
+            suppressor.changed("", null, "pool.max", null, false, 42L));
+        assertTrue(shouldSend(suppressor, "pool.max", null, false, 42L));
+        assertFalse(shouldSend(suppressor, "pool.max", null, false, 42L));
+    }
+
+    @Test
+    public void keeps_its_own_copy_of_the_tags() {
+        final GaugeSuppressor suppressor = new GaugeSuppressor(60000);
+        final String[] tags = {"shard:1"};
+
+        assertTrue(shouldSend(suppressor, "pool.max", tags, false, 42L));
+        tags[0] = "shard:2";
+        assertTrue(shouldSend(suppressor, "pool.max", tags, false, 42L));
+        assertFalse(shouldSend(suppressor, "pool.max", new String[] {"shard:1"}, false, 42L));
+    }
+}
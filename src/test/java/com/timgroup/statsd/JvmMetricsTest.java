@@ -0,0 +1,75 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class JvmMetricsTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+    private final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+        .prefix("app")
+        .customProtocol(new ListProtocol(messages))
+        .buildBlocking();
+
+    @Test
+    public void sends_the_runtime_metrics_with_the_gauges() {
+        final JvmMetrics jvm = JvmMetrics.register(client);
+        client.incrementCounter("calls");
+        jvm.close();
+        client.stop();
+
+        assertTrue(messages.size() > 10);
+        assertThat(messages, hasItem("app.calls:1|c"));
+        assertTrue(contains("app\\.jvm\\.heap_memory:[0-9]+\\|g"));
+        assertTrue(contains("app\\.jvm\\.thread_count:[0-9]+\\|g"));
+        assertTrue(contains("app\\.jvm\\.memory_pool\\.used:[0-9]+\\|g\\|#pool:[a-z0-9_.-]+"));
+    }
+
+    @Test
+    public void gc_totals_are_sent_as_gauges() {
+        final JvmMetrics jvm = JvmMetrics.register(client);
+        System.gc();
+        client.gauges().poll(new ListProtocol(messages), Telemetry.DISABLED, null);
+        jvm.close();
+        client.stop();
+
+        assertTrue(contains("app\\.jvm\\.gc\\.count:[1-9][0-9]*\\|g\\|#gc:[a-z0-9_.-]+"));
+        assertTrue(contains("app\\.jvm\\.gc\\.time:[0-9]+\\|g\\|#gc:[a-z0-9_.-]+"));
+        for (String message : messages) {
+            if (message.startsWith("app.jvm.gc.count:")
+                || message.startsWith("app.jvm.gc.time:")) {
+                assertTrue(message, message.contains("|g|"));
+            }
+        }
+    }
+
+    @Test
+    public void close_cancels_the_gauges() {
+        JvmMetrics.register(client).close();
+
+        assertEquals(0, client.gauges().size());
+    }
+
+    @Test
+    public void tag_values_are_normalized() {
+        assertEquals("g1_old_gen", JvmMetrics.tagValue("G1 Old Gen"));
+        assertEquals("codeheap_non-nmethods", JvmMetrics.tagValue("CodeHeap 'non-nmethods'"));
+        assertEquals("direct", JvmMetrics.tagValue("direct"));
+    }
+
+    private boolean contains(String regex) {
+        for (String message : messages) {
+            if (message.matches(regex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_cover_all_values_within_precision() {
+        long previous = -1;
+        for (int i = 0; i < 960; i++) {
+            final long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.index(previous + 1));
+            assertEquals(i, LatencyHistogram.index(upper));
+            assertThat(upper - previous, lessThanOrEqualTo(Math.max(1, (previous + 1) / 16)));
+            previous = upper;
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    @Test
+    public void reports_percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertThat(snapshot.getValueAtPercentile(50), between(500000, 500000 * 17 / 16));
+        assertThat(snapshot.getValueAtPercentile(99), between(990000, 990000 * 17 / 16));
+        assertThat(snapshot.getValueAtPercentile(99.9), between(999000, 999000 * 17 / 16));
+        assertThat(snapshot.getMax(), between(1000000, 1000000 * 17 / 16));
+    }
+
+    @Test
+    public void snapshot_difference_only_has_the_new_values() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000000);
+        final LatencyHistogram.Snapshot first = histogram.snapshot();
+        histogram.record(10);
+        histogram.record(-5);
+
+        final LatencyHistogram.Snapshot delta = histogram.snapshot().minus(first);
+        assertEquals(2, delta.getCount());
+        assertEquals(10, delta.getMax());
+        assertEquals(0, delta.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void empty_snapshot_reports_zero() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    private static org.hamcrest.Matcher<Long> between(long min, long max) {
+        return allOf(greaterThanOrEqualTo(min), lessThanOrEqualTo(max));
+    }
+}
@@ -0,0 +1,81 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class MetricBatchTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void formats_each_metric_with_the_client_prefix_and_tags() {
+        final StatsDClient client = new StatsDClientBuilder().prefix("my.prefix")
+            .constantTags("env:prod")
+            .customProtocol(new ListProtocol(messages))
+            .buildBlocking();
+        final MetricBatch batch = new MetricBatch(2)
+            .count("c", 1L)
+            .count("c", 0.5)
+            .gauge("g", 10L, "queue:a")
+            .gauge("g", 1.5, "queue:b")
+            .time("t", 12L)
+            .histogram("h", 3L)
+            .histogram("h", 3.5)
+            .distribution("d", 4L)
+            .distribution("d", 4.5);
+        client.recordBatch(batch);
+        client.stop();
+
+        assertThat(messages, contains(
+            "my.prefix.c:1|c|#env:prod",
+            "my.prefix.c:0.5|c|#env:prod",
+            "my.prefix.g:10|g|#env:prod,queue:a",
+            "my.prefix.g:1.5|g|#env:prod,queue:b",
+            "my.prefix.t:12|ms|#env:prod",
+            "my.prefix.h:3|h|#env:prod",
+            "my.prefix.h:3.5|h|#env:prod",
+            "my.prefix.d:4|d|#env:prod",
+            "my.prefix.d:4.5|d|#env:prod"));
+    }
+
+    @Test(timeout = 5000L)
+    public void batch_takes_a_single_queue_slot_and_can_be_reused() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .telemetry(0)
+            .jmx()
+            .buildNonBlocking(1);
+        final MetricBatch batch = new MetricBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.gauge("lag", i, "partition:" + i);
+        }
+        client.recordBatch(batch);
+        batch.clear();
+        batch.gauge("lag", 42L, "partition:last");
+        assertEquals(1, batch.size());
+        client.stop();
+
+        assertEquals(100, messages.size());
+        assertEquals("lag:0|g|#partition:0", messages.get(0));
+        assertEquals("lag:99|g|#partition:99", messages.get(99));
+        assertEquals(100, ((DefaultStatsDClient) client).telemetry.getMetrics());
+    }
+
+    @Test
+    public void views_apply_their_scope_to_batches() {
+        final StatsDClient client = new StatsDClientBuilder().prefix("app")
+            .customProtocol(new ListProtocol(messages))
+            .buildBlocking();
+        client.withPrefix("jobs").withTags("job:export").recordBatch(new MetricBatch()
+            .count("rows", 10L));
+        client.stop();
+
+        assertThat(messages, contains("app.jobs.rows:10|c|#job:export"));
+    }
+}
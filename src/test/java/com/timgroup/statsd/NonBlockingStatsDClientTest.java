@@ -214,6 +214,36 @@ public class NonBlockingStatsDClientTest {
         assertThat(server.messagesReceived(), contains("my.prefix.mygauge:423|g|@1.000000"));
     }
 
+    @Test(timeout=5000L) public void
+    sends_gauge_with_timestamp_to_statsd() throws Exception {
+
+
+        client.gaugeWithTimestamp("mygauge", 423, 1700000000L, "foo:bar");
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains("my.prefix.mygauge:423|g|#foo:bar|T1700000000"));
+    }
+
+    @Test(timeout=5000L) public void
+    sends_counter_with_timestamp_to_statsd() throws Exception {
+
+
+        client.countWithTimestamp("mycount", 0.5, 1700000000L);
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains("my.prefix.mycount:0.5|c|T1700000000"));
+    }
+
+    @Test(timeout=5000L) public void
+    sends_counter_without_timestamp_when_not_positive() throws Exception {
+
+
+        client.countWithTimestamp("mycount", 24L, 0L);
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c"));
+    }
+
     @Test(timeout=5000L) public void
     sends_large_double_gauge_to_statsd() throws Exception {
 
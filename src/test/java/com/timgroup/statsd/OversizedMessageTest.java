@@ -0,0 +1,169 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class OversizedMessageTest {
+
+    private static final int STATSD_SERVER_PORT = 17255;
+
+    private static DummyStatsDServer server;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        server = new DummyStatsDServer(STATSD_SERVER_PORT);
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.close();
+    }
+
+    @After
+    public void clear() {
+        server.clear();
+    }
+
+    private static String repeat(char c, int count) {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test(timeout = 5000L)
+    public void sends_a_message_larger_than_a_packet_in_its_own_datagram() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .buildBlocking();
+        final String text = repeat('x', 5000);
+        client.incrementCounter("before");
+        client.recordEvent(Event.builder().withTitle("large").withText(text).build());
+        client.incrementCounter("after");
+        client.stop();
+        // The large message went through a pooled direct buffer, given back after the send.
+        assertTrue(DirectBufferPool.INSTANCE.size(UdpProtocol.MAX_DATAGRAM_BYTES) > 0);
+
+        while (server.messagesReceived().size() < 3) {
+            Thread.sleep(10L);
+        }
+        assertThat(server.messagesReceived(), contains(
+            "before:1|c",
+            "_e{5,5000}:large|" + text,
+            "after:1|c"));
+    }
+
+    @Test(timeout = 5000L)
+    public void background_client_closes_the_large_payload_protocol() throws Exception {
+        final List<String> large = new ArrayList<String>();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final StatsDClient client = new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .largePayloadProtocol(new ListProtocol(large) {
+                @Override
+                public void close() {
+                    closed.set(true);
+                }
+            })
+            .buildNonBlocking();
+        client.recordEvent(Event.builder().withTitle("large").withText(repeat('x', 2000)).build());
+        client.stop();
+
+        assertEquals(1, large.size());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void counts_a_message_larger_than_a_datagram_as_dropped_once() throws Exception {
+        final List<Exception> errors = new ArrayList<Exception>();
+        final StatsDClient client = new StatsDClientBuilder()
+            .prefix("oversized")
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .errorHandler(new StatsDClientErrorHandler() {
+                @Override
+                public void handle(Exception exception) {
+                    errors.add(exception);
+                }
+            })
+            .jmx()
+            .buildBlocking();
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = server.queryNames(new ObjectName(
+                "com.timgroup.statsd:type=StatsDClient,prefix=\"oversized\",*"), null)
+                .iterator().next();
+            final StatsDClientMXBean bean =
+                JMX.newMXBeanProxy(server, name, StatsDClientMXBean.class);
+            client.gauge(repeat('x', UdpProtocol.MAX_DATAGRAM_BYTES), 1);
+
+            assertEquals(1, errors.size());
+            assertEquals(1, bean.getMetricsDroppedSendError());
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void sends_the_messages_larger_than_a_packet_with_the_large_payload_protocol()
+        throws Exception {
+        final List<String> large = new ArrayList<String>();
+        final StatsDClient client = new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .largePayloadProtocol(new ListProtocol(large))
+            .buildBlocking();
+        final String text = repeat('x', 2000);
+        client.recordEvent(Event.builder().withTitle("small").withText("text").build());
+        client.recordEvent(Event.builder().withTitle("large").withText(text).build());
+        client.stop();
+
+        assertThat(large, contains("_e{5,2000}:large|" + text));
+        server.waitForMessage();
+        assertThat(server.messagesReceived(), contains("_e{5,4}:small|text"));
+    }
+
+    @Test
+    public void truncates_the_event_texts() throws Exception {
+        final List<String> messages = new ArrayList<String>();
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .maxEventTextLength(10)
+            .buildBlocking();
+        client.recordEvent(Event.builder().withTitle("short").withText("0123456789").build());
+        client.recordEvent(Event.builder().withTitle("long").withText("0123456789ab").build());
+        client.stop();
+
+        assertThat(messages, contains(
+            "_e{5,10}:short|0123456789",
+            "_e{4,10}:long|0123456..."));
+    }
+
+    @Test
+    public void does_not_split_a_surrogate_pair() {
+        final String text = "012345\uD83D\uDE00789";
+        assertEquals("012345...", DefaultStatsDClient.truncate(text, 10));
+        assertEquals(text, DefaultStatsDClient.truncate(text, 0));
+        assertEquals("...", DefaultStatsDClient.truncate(text, 2));
+    }
+}
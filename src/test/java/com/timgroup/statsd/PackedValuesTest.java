@@ -0,0 +1,132 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+public class PackedValuesTest {
+
+    private final List<String> messages = new ArrayList<String>();
+    private final List<Exception> errors = new ArrayList<Exception>();
+    private final StatsDClient client = new StatsDClientBuilder().prefix("my.prefix")
+        .constantTags("env:prod")
+        .customProtocol(new ListProtocol(messages))
+        .errorHandler(new StatsDClientErrorHandler() {
+            @Override
+            public void handle(Exception exception) {
+                errors.add(exception);
+            }
+        })
+        .buildBlocking();
+
+    @After
+    public void stop() {
+        client.stop();
+    }
+
+    @Test
+    public void packs_the_range_of_values_in_one_line() {
+        client.recordHistogramValues("h", new long[] {9, 1, 2, 3, 9}, 1, 3, "tag:a");
+        client.recordDistributionValues("d", new double[] {0.5, 1.25}, 0, 2);
+        client.recordExecutionTimes("t", new long[] {12}, 0, 1);
+        client.recordExecutionTimes("t", new double[] {0.001}, 0, 1);
+        client.recordHistogramValues("h", new double[] {Double.NaN}, 0, 1);
+        client.recordDistributionValues("d", new long[] {-4}, 0, 1);
+
+        assertThat(messages, contains(
+            "my.prefix.h:1:2:3|h|#env:prod,tag:a",
+            "my.prefix.d:0.5:1.25|d|#env:prod",
+            "my.prefix.t:12|ms|#env:prod",
+            "my.prefix.t:0.001|ms|#env:prod",
+            "my.prefix.h:NaN|h|#env:prod",
+            "my.prefix.d:-4|d|#env:prod"));
+    }
+
+    @Test
+    public void splits_lines_at_packet_boundaries() {
+        final long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000 + i;
+        }
+        client.recordDistributionValues("latency", values, 0, values.length, "host:hé");
+
+        int count = 0;
+        long expected = 1000000;
+        for (String line : messages) {
+            assertThat(line.getBytes(Protocol.MESSAGE_CHARSET).length,
+                lessThanOrEqualTo(Protocol.PACKET_SIZE_BYTES));
+            final String[] parts = line.substring(0, line.indexOf('|')).split(":");
+            assertEquals("my.prefix.latency", parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                assertEquals(expected++, Long.parseLong(parts[i]));
+                count++;
+            }
+        }
+        assertEquals(1000, count);
+        // 38 bytes of name, type and tags, then 170 values of 8 bytes per line.
+        assertEquals(6, messages.size());
+    }
+
+    @Test
+    public void empty_range_sends_nothing() {
+        client.recordHistogramValues("h", new long[] {1}, 1, 0);
+
+        assertEquals(0, messages.size());
+    }
+
+    @Test
+    public void reports_out_of_bounds_ranges_to_the_handler() {
+        client.recordHistogramValues("h", new long[] {1, 2}, 1, 2);
+
+        assertEquals(0, messages.size());
+        assertEquals(1, errors.size());
+        assertThat(errors.get(0), instanceOf(IndexOutOfBoundsException.class));
+    }
+
+    @Test
+    public void formats_doubles_like_the_number_formatter() {
+        final NumberFormat formatter = NumberFormat.getInstance(Locale.US);
+        formatter.setGroupingUsed(false);
+        formatter.setMaximumFractionDigits(6);
+        final Random random = new Random(42);
+        final double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 6);
+        }
+        values[0] = 0;
+        values[1] = 0.001;
+        values[2] = 0.0078125;
+        values[3] = 123456789.5;
+        values[4] = 1e12;
+        values[5] = Double.POSITIVE_INFINITY;
+        values[6] = -0.0000001;
+        values[7] = -0.0;
+
+        for (double value : values) {
+            final StringBuilder sb = new StringBuilder();
+            DefaultStatsDClient.appendDouble(value, sb);
+            assertEquals(String.valueOf(value), formatter.format(value), sb.toString());
+        }
+    }
+
+    @Test
+    public void packed_values_are_formatted_like_single_values() {
+        final double[] values = {-0.0, -0.0000001, Double.NaN, 1e20, -1.5e300, 0.25};
+        for (double value : values) {
+            client.recordDistributionValue("d", value);
+            client.recordDistributionValues("d", new double[] {value}, 0, 1);
+            assertEquals(String.valueOf(value), messages.get(0), messages.get(1));
+            messages.clear();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PacketPacerTest {
+
+    private static final int STATSD_SERVER_PORT = 17259;
+
+    private static DummyStatsDServer server;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        server = new DummyStatsDServer(STATSD_SERVER_PORT);
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.close();
+    }
+
+    @After
+    public void clear() {
+        server.clear();
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void unlimited_pacer_never_drops() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(PacketPacer.UNLIMITED.tryAcquire(Protocol.PACKET_SIZE_BYTES));
+        }
+    }
+
+    @Test
+    public void caps_the_packets_per_second_after_a_burst() throws Exception {
+        final PacketPacer pacer = new PacketPacer(100, 0, 5, Protocol.PACKET_SIZE_BYTES,
+            false);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(pacer.tryAcquire(Protocol.PACKET_SIZE_BYTES));
+        }
+        assertFalse(pacer.tryAcquire(Protocol.PACKET_SIZE_BYTES));
+
+        Thread.sleep(20);
+        assertTrue(pacer.tryAcquire(Protocol.PACKET_SIZE_BYTES));
+    }
+
+    @Test
+    public void caps_the_bytes_per_second() throws Exception {
+        final PacketPacer pacer = new PacketPacer(0, 100000, 1, 1000, false);
+        assertTrue(pacer.tryAcquire(1000));
+        assertFalse(pacer.tryAcquire(1000));
+
+        // A packet larger than the bucket goes once the bucket is full, and is paid back after.
+        Thread.sleep(20);
+        assertTrue(pacer.tryAcquire(5000));
+        Thread.sleep(20);
+        assertFalse(pacer.tryAcquire(1000));
+    }
+
+    @Test
+    public void waiting_pacer_delays_the_packets_over_the_rate() {
+        final PacketPacer pacer = new PacketPacer(100, 0, 2, Protocol.PACKET_SIZE_BYTES, true);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 7; i++) {
+            assertTrue(pacer.acquire(Protocol.PACKET_SIZE_BYTES));
+        }
+
+        // The burst goes at once, then one packet every 10 ms.
+        assertTrue(millisSince(start) >= 45);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_negative_rates() {
+        new PacketPacer(-1, 0, 1, Protocol.PACKET_SIZE_BYTES, true);
+    }
+
+    @Test(timeout = 5000L)
+    public void background_client_delays_the_packets_over_the_rate() throws Exception {
+        final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .packetSize(20)
+            .pacing(100, 0, 2)
+            .jmx()
+            .buildNonBlocking(100);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 7; i++) {
+            client.incrementCounter("count." + i);
+        }
+        client.stop();
+
+        // One packet per metric: the burst goes, then the IO thread waits for the rest.
+        assertTrue(millisSince(start) >= 45);
+        assertEquals(0, client.telemetry.getDropped(Telemetry.DropReason.PACED));
+        while (server.messagesReceived().size() < 7) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test(timeout = 5000L)
+    public void blocking_client_drops_the_packets_over_the_rate() throws Exception {
+        final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol()
+            .pacing(1, 0, 2)
+            .jmx()
+            .buildBlocking();
+        final long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            client.incrementCounter("count");
+        }
+        client.stop();
+
+        // One packet per metric with autoflush: the burst goes, the rest is dropped at once.
+        assertTrue(millisSince(start) < 500);
+        assertEquals(3, client.telemetry.getDropped(Telemetry.DropReason.PACED));
+        while (server.messagesReceived().size() < 2) {
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class PacketSizeTest {
+
+    private static final int STATSD_SERVER_PORT = 17256;
+
+    @Test
+    public void picks_the_packet_size_from_the_mtu() throws Exception {
+        final InetAddress ipv4 = InetAddress.getByName("10.0.0.1");
+        final InetAddress ipv6 = InetAddress.getByName("fd00::1");
+        assertEquals(Protocol.PACKET_SIZE_BYTES, UdpProtocol.packetSize(ipv4, 1500));
+        assertEquals(Protocol.PACKET_SIZE_BYTES, UdpProtocol.packetSize(ipv6, 1280));
+        assertEquals(3972, UdpProtocol.packetSize(ipv4, 4000));
+        assertEquals(3952, UdpProtocol.packetSize(ipv6, 4000));
+        assertEquals(8192, UdpProtocol.packetSize(ipv4, 9000));
+    }
+
+    @Test
+    public void picks_large_packets_over_loopback() throws Exception {
+        assertEquals(UdpProtocol.MAX_AUTO_PACKET_SIZE_BYTES,
+            UdpProtocol.autoPacketSize(new InetSocketAddress("127.0.0.1", STATSD_SERVER_PORT)));
+    }
+
+    @Test
+    public void uses_the_configured_packet_size() throws Exception {
+        final StatsDClientBuilder builder = new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(STATSD_SERVER_PORT)
+            .udpProtocol();
+        assertEquals(Protocol.PACKET_SIZE_BYTES, packetSize(builder.buildBlocking()));
+        assertEquals(4000, packetSize(builder.packetSize(4000).buildBlocking()));
+        assertEquals(UdpProtocol.MAX_AUTO_PACKET_SIZE_BYTES,
+            packetSize(builder.autoPacketSize().buildBlocking()));
+        assertEquals(9000, packetSize(new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(new ArrayList<String>()))
+            .packetSize(9000)
+            .buildBlocking()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_packets_larger_than_a_datagram() {
+        new StatsDClientBuilder().packetSize(UdpProtocol.MAX_DATAGRAM_BYTES + 1);
+    }
+
+    @Test(timeout = 5000L)
+    public void packs_the_messages_in_packets_of_the_configured_size() throws Exception {
+        final DummyStatsDServer server = new DummyStatsDServer(STATSD_SERVER_PORT);
+        try {
+            final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+                .hostname("localhost")
+                .port(STATSD_SERVER_PORT)
+                .udpProtocol()
+                .packetSize(4000)
+                .jmx()
+                .buildBlocking(false);
+            // 500 lines of 10 bytes, newline included: 2 packets instead of 4 with the default.
+            for (int i = 0; i < 500; i++) {
+                client.incrementCounter("count");
+            }
+            client.stop();
+
+            assertEquals(2, client.telemetry.getPacketsSent());
+            while (server.messagesReceived().size() < 500) {
+                Thread.sleep(10L);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static int packetSize(StatsDClient client) {
+        client.stop();
+        return ((DefaultStatsDClient) client).packetSizeBytes();
+    }
+}
@@ -0,0 +1,105 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class PolledGaugeTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicLong value = new AtomicLong(3);
+
+    private final LongSupplier longSupplier = new LongSupplier() {
+        @Override
+        public long getAsLong() {
+            return value.get();
+        }
+    };
+
+    @Test
+    public void blocking_client_polls_gauges_with_the_next_metric() {
+        final StatsDClient client = new StatsDClientBuilder().prefix("app")
+            .constantTags("env:prod")
+            .customProtocol(new ListProtocol(messages))
+            .buildBlocking();
+        client.registerGauge("pool.size", longSupplier, "pool:db");
+        client.registerGauge("load", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return 0.5;
+            }
+        });
+
+        client.incrementCounter("calls");
+        // Not due again before the poll interval.
+        client.incrementCounter("calls");
+        client.stop();
+
+        assertThat(messages, contains(
+            "app.calls:1|c|#env:prod",
+            "app.pool.size:3|g|#env:prod,pool:db",
+            "app.load:0.5|g|#env:prod",
+            "app.calls:1|c|#env:prod"));
+    }
+
+    @Test(timeout = 5000L)
+    public void background_client_polls_gauges_without_other_traffic() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .gaugePollInterval(10)
+            .buildNonBlocking();
+        final PolledGauge gauge = client.withPrefix("db").registerGauge("pool.size",
+            longSupplier);
+        try {
+            while (!messages.contains("db.pool.size:3|g")) {
+                Thread.sleep(10);
+            }
+            value.set(7);
+            while (!messages.contains("db.pool.size:7|g")) {
+                Thread.sleep(10);
+            }
+            gauge.cancel();
+            Thread.sleep(50);
+            messages.clear();
+            Thread.sleep(50);
+            assertEquals(Collections.emptyList(), messages);
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void failing_supplier_is_reported_and_skipped() {
+        final List<Exception> errors = new ArrayList<Exception>();
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .errorHandler(new StatsDClientErrorHandler() {
+                @Override
+                public void handle(Exception exception) {
+                    errors.add(exception);
+                }
+            })
+            .buildBlocking();
+        client.registerGauge("broken", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                throw new IllegalStateException("closed");
+            }
+        });
+        client.registerGauge("pool.size", longSupplier);
+
+        client.incrementCounter("calls");
+        client.stop();
+
+        assertThat(messages, contains("calls:1|c", "pool.size:3|g"));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,148 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Test;
+
+public class PriorityLaneTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch stalled = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Telemetry telemetry = new Telemetry(0, null);
+    private final NonBlockingStatsDClient client = new NonBlockingStatsDClient("my.prefix", 1,
+        null, null, new StallingProtocol(), telemetry);
+
+    @After
+    public void stop() {
+        release.countDown();
+        client.stop();
+    }
+
+    @Test(timeout = 5000L)
+    public void events_and_service_checks_bypass_a_full_metric_queue() throws Exception {
+        client.incrementCounter("first");
+        stalled.await();
+        client.incrementCounter("queued");
+        client.incrementCounter("dropped");
+        client.recordEvent(Event.builder().withTitle("deploy").withText("v2").build());
+        client.recordServiceCheckRun(ServiceCheck.builder().withName("check")
+            .withStatus(ServiceCheck.Status.OK).build());
+        release.countDown();
+        client.stop();
+
+        assertThat(messages, contains(
+            "my.prefix.first:1|c",
+            "_sc|check|0",
+            "_e{16,2}:my.prefix.deploy|v2",
+            "my.prefix.queued:1|c"));
+        assertEquals(1, telemetry.getDropped(Lane.METRIC));
+        assertEquals(0, telemetry.getDropped(Lane.EVENT));
+        assertEquals(0, telemetry.getDropped(Lane.SERVICE_CHECK));
+    }
+
+    @Test(timeout = 5000L)
+    public void lanes_are_bounded_independently() throws Exception {
+        client.incrementCounter("first");
+        stalled.await();
+        final Event event = Event.builder().withTitle("deploy").withText("v2").build();
+        for (int i = 0; i <= Lane.PRIORITY_CAPACITY; i++) {
+            client.recordEvent(event);
+        }
+        client.incrementCounter("queued");
+        release.countDown();
+        client.stop();
+
+        assertEquals(Lane.PRIORITY_CAPACITY + 2, messages.size());
+        assertEquals(1, telemetry.getDropped(Lane.EVENT));
+        assertEquals(0, telemetry.getDropped(Lane.METRIC));
+    }
+
+    @Test(timeout = 5000L)
+    public void gauge_dropped_by_a_full_queue_is_not_suppressed() throws Exception {
+        client.suppressGauges(60000);
+        client.incrementCounter("first");
+        stalled.await();
+        client.incrementCounter("queued");
+        client.recordGaugeValue("pool.max", 42L);
+        release.countDown();
+        while (messages.size() < 2) {
+            Thread.sleep(1);
+        }
+        client.recordGaugeValue("pool.max", 42L);
+        client.stop();
+
+        assertThat(messages, contains(
+            "my.prefix.first:1|c",
+            "my.prefix.queued:1|c",
+            "my.prefix.pool.max:42|g"));
+        assertEquals(1, telemetry.getDropped(Lane.METRIC));
+    }
+
+    @Test(timeout = 5000L)
+    public void waking_the_io_thread_up_does_not_take_a_slot_of_the_metric_queue()
+        throws Exception {
+        final Telemetry idleTelemetry = new Telemetry(0, null);
+        final NonBlockingStatsDClient idle = new NonBlockingStatsDClient("my.prefix", 1, null,
+            null, new ListProtocol(messages), idleTelemetry);
+        Thread.sleep(50);
+        idle.recordServiceCheckRun(ServiceCheck.builder().withName("check")
+            .withStatus(ServiceCheck.Status.OK).build());
+        idle.incrementCounter("counter");
+        idle.stop();
+
+        assertThat(messages, containsInAnyOrder("_sc|check|0", "my.prefix.counter:1|c"));
+        assertEquals(0, idleTelemetry.getDropped(Lane.METRIC));
+    }
+
+    @Test(timeout = 5000L)
+    public void service_check_does_not_wait_for_the_wait_resolution() throws Exception {
+        final ConcurrentStatsDClient concurrent = new ConcurrentStatsDClient("my.prefix", 60000L,
+            null, null, new ListProtocol(messages));
+        try {
+            Thread.sleep(50);
+            concurrent.recordServiceCheckRun(ServiceCheck.builder().withName("check")
+                .withStatus(ServiceCheck.Status.OK).build());
+            while (messages.isEmpty()) {
+                Thread.sleep(1);
+            }
+            assertThat(messages, contains("_sc|check|0"));
+        } finally {
+            concurrent.stop();
+        }
+    }
+
+    /**
+     * Blocks the IO thread on the first message until released.
+     */
+    private final class StallingProtocol implements Protocol {
+
+        @Override
+        public void send(String message) throws IOException {
+            messages.add(message);
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
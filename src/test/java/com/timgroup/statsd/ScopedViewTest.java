@@ -0,0 +1,63 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ScopedViewTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void views_add_prefix_and_tags() {
+        final StatsDClient client = new StatsDClientBuilder().prefix("app")
+            .constantTags("env:prod")
+            .customProtocol(new ListProtocol(messages))
+            .buildBlocking();
+
+        client.withPrefix("db").count("queries", 1L);
+        client.withTags("shard:3").count("queries", 1L, "table:users");
+        client.withPrefix("db").withTags("shard:3").withPrefix("pool").gauge("size", 4L);
+        client.withPrefix("db").recordEvent(Event.builder().withTitle("failover").withText("up")
+            .build());
+        client.stop();
+
+        assertThat(messages, contains(
+            "app.db.queries:1|c|#env:prod",
+            "app.queries:1|c|#env:prod,shard:3,table:users",
+            "app.db.pool.size:4|g|#env:prod,shard:3",
+            "_e{15,2}:app.db.failover|up|#env:prod"));
+    }
+
+    @Test(timeout = 5000L)
+    public void views_share_the_queue_of_the_client() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .buildNonBlocking(10);
+        final StatsDClient view = client.withTags("scope:view");
+
+        view.incrementCounter("calls");
+        view.stop();
+        client.incrementCounter("calls");
+        client.stop();
+
+        assertThat(messages, contains("calls:1|c|#scope:view", "calls:1|c"));
+    }
+
+    @Test
+    public void empty_scopes_return_the_client() {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .buildBlocking();
+
+        assertSame(client, client.withPrefix(""));
+        assertSame(client, client.withPrefix(null));
+        assertSame(client, client.withTags());
+        client.stop();
+    }
+}
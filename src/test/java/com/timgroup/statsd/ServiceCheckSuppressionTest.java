@@ -0,0 +1,115 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ServiceCheckSuppressionTest {
+
+    private final List<String> messages = new ArrayList<String>();
+
+    @Test
+    public void sends_status_changes_only() {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .serviceCheckHeartbeat(60000)
+            .buildBlocking();
+
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.OK, "shard:1"));
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.OK, "shard:1"));
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.OK, "shard:2"));
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.CRITICAL, "shard:1"));
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.CRITICAL, "shard:1"));
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.OK, "shard:1"));
+        client.stop();
+
+        assertThat(messages, contains(
+            "_sc|db|0|#shard:1",
+            "_sc|db|0|#shard:2",
+            "_sc|db|2|#shard:1",
+            "_sc|db|0|#shard:1"));
+    }
+
+    @Test
+    public void views_with_other_constant_tags_are_distinct_checks() {
+        final StatsDClient client = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .serviceCheckHeartbeat(60000)
+            .buildBlocking();
+
+        client.recordServiceCheckRun(check("db", ServiceCheck.Status.OK));
+        client.withTags("region:eu").recordServiceCheckRun(check("db", ServiceCheck.Status.OK));
+        client.withTags("region:eu").recordServiceCheckRun(check("db", ServiceCheck.Status.OK));
+        client.stop();
+
+        assertThat(messages, contains("_sc|db|0", "_sc|db|0|#region:eu"));
+    }
+
+    private static boolean shouldSend(ServiceCheckSuppressor suppressor, ServiceCheck check,
+        String constantTags) {
+        final ServiceCheckSuppressor.State state = suppressor.changed(check, constantTags);
+        if (state == ServiceCheckSuppressor.UNCHANGED) {
+            return false;
+        }
+        state.sent(check.getStatus());
+        return true;
+    }
+
+    @Test
+    public void resends_after_the_heartbeat() throws Exception {
+        final ServiceCheckSuppressor suppressor = new ServiceCheckSuppressor(20);
+        final ServiceCheck check = check("db", ServiceCheck.Status.OK);
+
+        assertTrue(shouldSend(suppressor, check, null));
+        assertFalse(shouldSend(suppressor, check, null));
+        Thread.sleep(30);
+        assertTrue(shouldSend(suppressor, check, null));
+        assertFalse(shouldSend(suppressor, check, null));
+    }
+
+    @Test
+    public void evicts_idle_checks() throws Exception {
+        final ServiceCheckSuppressor suppressor = new ServiceCheckSuppressor(20);
+        shouldSend(suppressor, check("idle", ServiceCheck.Status.OK), null);
+        assertEquals(1, suppressor.size());
+
+        Thread.sleep(50);
+        shouldSend(suppressor, check("active", ServiceCheck.Status.OK), null);
+
+        assertEquals(1, suppressor.size());
+    }
+
+    @Test
+    public void status_not_recorded_as_sent_is_not_suppressed() {
+        final ServiceCheckSuppressor suppressor = new ServiceCheckSuppressor(60000);
+        final ServiceCheck ok = check("db", ServiceCheck.Status.OK);
+        final ServiceCheck critical = check("db", ServiceCheck.Status.CRITICAL);
+
+        assertTrue(shouldSend(suppressor, ok, null));
+        assertNotSame(ServiceCheckSuppressor.UNCHANGED, suppressor.changed(critical, null));
+        assertTrue(shouldSend(suppressor, critical, null));
+        assertFalse(shouldSend(suppressor, critical, null));
+    }
+
+    @Test
+    public void keeps_its_own_copy_of_the_tags() {
+        final ServiceCheckSuppressor suppressor = new ServiceCheckSuppressor(60000);
+        final String[] tags = {"shard:1"};
+
+        assertTrue(shouldSend(suppressor, check("db", ServiceCheck.Status.OK, tags), null));
+        tags[0] = "shard:2";
+        assertTrue(shouldSend(suppressor, check("db", ServiceCheck.Status.OK, tags), null));
+        assertFalse(shouldSend(suppressor, check("db", ServiceCheck.Status.OK, "shard:1"), null));
+    }
+
+    private static ServiceCheck check(String name, ServiceCheck.Status status, String... tags) {
+        return ServiceCheck.builder().withName(name).withStatus(status).withTags(tags).build();
+    }
+}
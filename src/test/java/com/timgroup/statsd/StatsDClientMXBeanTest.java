@@ -0,0 +1,86 @@
+package com.timgroup.statsd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.management.JMX;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+public class StatsDClientMXBeanTest {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    private ObjectName lookup(String prefix) throws Exception {
+        final Set<ObjectName> names = server.queryNames(new ObjectName(
+            "com.timgroup.statsd:type=StatsDClient,prefix=" + ObjectName.quote(prefix) + ",*"),
+            null);
+        assertEquals(1, names.size());
+        return names.iterator().next();
+    }
+
+    private static Set<String> attributes(MBeanInfo info) {
+        final Set<String> names = new HashSet<String>();
+        for (final MBeanAttributeInfo attribute : info.getAttributes()) {
+            names.add(attribute.getName());
+        }
+        return names;
+    }
+
+    @Test(timeout = 5000L)
+    public void exposes_client_internals() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder().prefix("jmx.nonblocking")
+            .customProtocol(new ListProtocol(messages))
+            .jmx()
+            .buildNonBlocking(100);
+        try {
+            final BackgroundStatsDClientMXBean bean = JMX.newMXBeanProxy(server,
+                lookup("jmx.nonblocking"), BackgroundStatsDClientMXBean.class);
+            client.count("mycount", 24);
+            client.count("mycount", 24);
+            while (messages.size() < 2) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(100, bean.getQueueCapacity());
+            assertEquals(2, bean.getMetrics());
+            assertEquals(0, bean.getMetricsDroppedQueueFull());
+            assertEquals(0, bean.getFlushInterval());
+            bean.setFlushInterval(50);
+            assertEquals(50, bean.getFlushInterval());
+            bean.flush();
+        } finally {
+            client.stop();
+        }
+        assertTrue(server.queryNames(new ObjectName(
+            "com.timgroup.statsd:type=StatsDClient,prefix=\"jmx.nonblocking\",*"), null).isEmpty());
+    }
+
+    @Test
+    public void blocking_client_has_no_flush_interval() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder().prefix("jmx.blocking")
+            .customProtocol(new ListProtocol(messages))
+            .jmx()
+            .buildBlocking();
+        try {
+            final ObjectName name = lookup("jmx.blocking");
+            final Set<String> attributes = attributes(server.getMBeanInfo(name));
+            assertTrue(attributes.contains("Metrics"));
+            assertFalse(attributes.contains("FlushInterval"));
+            JMX.newMXBeanProxy(server, name, StatsDClientMXBean.class).flush();
+        } finally {
+            client.stop();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class StatsDHubTest {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test(timeout = 5000L)
+    public void clients_share_the_transport_with_their_own_prefix_and_tags() throws Exception {
+        final StatsDHub hub = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .buildHub(100);
+        final StatsDClient db = hub.newClient("db", "module:db");
+        final StatsDClient web = hub.newClient("web");
+        assertEquals(2, hub.getClientCount());
+
+        db.count("queries", 1L, "shard:3");
+        web.incrementCounter("requests");
+        db.stop();
+        assertEquals(1, hub.getClientCount());
+        hub.stop();
+
+        assertThat(messages, containsInAnyOrder(
+            "db.queries:1|c|#module:db,shard:3",
+            "web.requests:1|c"));
+    }
+
+    @Test(timeout = 5000L)
+    public void stopping_a_client_cancels_its_polled_gauges() throws Exception {
+        final StatsDHub hub = new StatsDClientBuilder()
+            .customProtocol(new ListProtocol(messages))
+            .buildHub(100);
+        try {
+            final DefaultStatsDClient db = (DefaultStatsDClient) hub.newClient("db");
+            final StatsDClient web = hub.newClient("web");
+            db.registerGauge("pool.size", new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return 1;
+                }
+            });
+            web.registerGauge("sessions", new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return 2;
+                }
+            });
+            assertEquals(2, db.gauges().size());
+
+            db.stop();
+            assertEquals(1, db.gauges().size());
+        } finally {
+            hub.stop();
+        }
+    }
+
+    @Test(timeout = 5000L)
+    public void udp_hub_delivers_the_metrics_of_all_clients() throws Exception {
+        final DummyStatsDServer server = new DummyStatsDServer(17256);
+        final StatsDHub hub = new StatsDClientBuilder()
+            .hostname("localhost")
+            .port(17256)
+            .udpProtocol()
+            .buildHub();
+        try {
+            hub.newClient("a").gauge("value", 1L);
+            hub.newClient("b").gauge("value", 2L);
+            server.waitForMessage();
+            while (server.messagesReceived().size() < 2) {
+                Thread.sleep(10);
+            }
+            assertThat(server.messagesReceived(), containsInAnyOrder("a.value:1|g", "b.value:2|g"));
+        } finally {
+            hub.stop();
+            server.close();
+        }
+    }
+}
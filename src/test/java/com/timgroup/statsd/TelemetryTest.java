@@ -0,0 +1,108 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TelemetryTest {
+
+    private final List<String> messages = new ArrayList<>();
+    private final Protocol protocol = new ListProtocol(messages);
+
+    @Test
+    public void reports_deltas_since_last_report() throws Exception {
+        final Telemetry telemetry = new Telemetry(1000, new String[] {"app:bar"});
+        telemetry.onMetric();
+        telemetry.onMetric();
+        telemetry.onDropped(Telemetry.DropReason.QUEUE_FULL);
+        telemetry.onPacketSent(120);
+
+        telemetry.report(protocol, 4);
+        assertThat(messages, hasItems(
+            "datadog.dogstatsd.client.metrics:2|c|#client:java,app:bar",
+            "datadog.dogstatsd.client.metrics_dropped:1|c|#client:java,app:bar,reason:queue_full",
+            "datadog.dogstatsd.client.metrics_dropped:0|c|#client:java,app:bar,reason:send_error",
+            "datadog.dogstatsd.client.bytes_sent:120|c|#client:java,app:bar",
+            "datadog.dogstatsd.client.packets_sent:1|c|#client:java,app:bar",
+            "datadog.dogstatsd.client.queue_depth:4|g|#client:java,app:bar"));
+
+        messages.clear();
+        telemetry.onMetric();
+        telemetry.report(protocol, 0);
+        assertThat(messages, hasItems(
+            "datadog.dogstatsd.client.metrics:1|c|#client:java,app:bar",
+            "datadog.dogstatsd.client.metrics_dropped:0|c|#client:java,app:bar,reason:queue_full",
+            "datadog.dogstatsd.client.bytes_sent:0|c|#client:java,app:bar"));
+    }
+
+    @Test
+    public void disabled_telemetry_records_nothing() {
+        Telemetry.DISABLED.onMetric();
+        Telemetry.DISABLED.onDropped(Telemetry.DropReason.QUEUE_FULL);
+
+        assertEquals(0, Telemetry.DISABLED.getMetrics());
+        assertEquals(0, Telemetry.DISABLED.getDropped(Telemetry.DropReason.QUEUE_FULL));
+        assertFalse(Telemetry.DISABLED.isDue(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void report_is_reserved_by_a_single_caller() {
+        final Telemetry telemetry = new Telemetry(1000, null);
+        final long later = System.nanoTime() + 2000000000L;
+
+        assertTrue(telemetry.isDue(later));
+        assertFalse(telemetry.isDue(later));
+    }
+
+    @Test(timeout = 5000L)
+    public void client_reports_its_telemetry_on_its_protocol() throws Exception {
+        final StatsDClient client = new StatsDClientBuilder().prefix("my.prefix")
+            .customProtocol(protocol)
+            .telemetry(1)
+            .buildBlocking();
+        client.count("mycount", 24);
+        Thread.sleep(5);
+        client.count("mycount", 24);
+        client.stop();
+
+        assertThat(messages, hasItem("my.prefix.mycount:24|c"));
+        assertThat(messages, hasItem(startsWith("datadog.dogstatsd.client.metrics:")));
+    }
+
+    @Test
+    public void times_sampled_calls_and_reports_their_percentiles() throws Exception {
+        final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+            .prefix("my.prefix")
+            .customProtocol(protocol)
+            .callerLatency(1)
+            .buildBlocking();
+        client.count("mycount", 24);
+        client.recordServiceCheckRun(ServiceCheck.builder().withName("my.check")
+            .withStatus(ServiceCheck.Status.OK).build());
+        assertEquals(2, client.getCallerLatency().snapshot().getCount());
+
+        client.telemetry.report(protocol, 0);
+        client.stop();
+        assertThat(messages, hasItem(startsWith("datadog.dogstatsd.client.caller_latency_ns.p999:")));
+    }
+
+    @Test
+    public void caller_latency_is_not_recorded_by_default() {
+        final DefaultStatsDClient client = (DefaultStatsDClient) new StatsDClientBuilder()
+            .customProtocol(protocol)
+            .buildBlocking();
+        client.count("mycount", 24);
+        client.stop();
+
+        assertNull(client.getCallerLatency());
+    }
+}
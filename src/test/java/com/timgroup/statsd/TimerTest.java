@@ -0,0 +1,74 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+public class TimerTest {
+
+    private final List<String> messages = new ArrayList<String>();
+    private final StatsDClient client = new StatsDClientBuilder().prefix("my.prefix")
+        .customProtocol(new ListProtocol(messages))
+        .buildBlocking();
+
+    @After
+    public void stop() {
+        client.stop();
+    }
+
+    @Test
+    public void records_fractional_milliseconds() {
+        final Timer timer = client.timer("op", "tag:a");
+        timer.record(1234567L);
+        timer.record(500L);
+
+        assertThat(messages, contains(
+            "my.prefix.op:1.234567|ms|#tag:a",
+            "my.prefix.op:0.0005|ms|#tag:a"));
+    }
+
+    @Test
+    public void distribution_timer_records_distribution_values() {
+        client.distributionTimer("op").record(2500000L);
+
+        assertThat(messages, contains("my.prefix.op:2.5|d"));
+    }
+
+    @Test
+    public void records_time_between_start_and_stop() {
+        final Timer timer = client.timer("op");
+        final long start = timer.start();
+        timer.stop(start);
+
+        assertThat(messages, hasSize(1));
+        assertTrue(messages.get(0).matches("my\\.prefix\\.op:[0-9.]+\\|ms"));
+    }
+
+    @Test
+    public void sample_records_when_closed() {
+        final Timer timer = client.timer("op");
+        try (Timer.Sample sample = timer.time()) {
+            assertEquals(0, messages.size());
+        }
+
+        assertThat(messages, hasSize(1));
+        assertTrue(messages.get(0).matches("my\\.prefix\\.op:[0-9.]+\\|ms"));
+    }
+
+    @Test
+    public void records_double_execution_times() {
+        client.recordExecutionTime("op", 0.25, "tag:a");
+        client.recordExecutionTime("op", 0.25, 1.0);
+
+        assertThat(messages, contains(
+            "my.prefix.op:0.25|ms|#tag:a",
+            "my.prefix.op:0.25|ms|@1.000000"));
+    }
+}
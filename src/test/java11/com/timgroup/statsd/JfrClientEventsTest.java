@@ -0,0 +1,103 @@
+package com.timgroup.statsd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+public class JfrClientEventsTest {
+
+    private static final String PREFIX = "com.timgroup.statsd.";
+
+    @Test
+    public void loads_the_jfr_implementation() {
+        assertTrue(ClientEvents.INSTANCE instanceof JfrClientEvents);
+    }
+
+    @Test
+    public void is_enabled_only_while_a_recording_records_the_timed_events() {
+        final ClientEvents events = new JfrClientEvents();
+        assertFalse(events.isEnabled());
+        try (Recording recording = new Recording()) {
+            recording.disable(PREFIX + "PacketFlush");
+            recording.disable(PREFIX + "SlowSend");
+            recording.disable(PREFIX + "AddressResolution");
+            recording.enable(PREFIX + "QueueOverflow");
+            recording.start();
+            // Not timed, and not worth timing the sends for.
+            assertFalse(events.isEnabled());
+        }
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "PacketFlush");
+            recording.start();
+            assertTrue(events.isEnabled());
+            recording.stop();
+            assertFalse(events.isEnabled());
+        }
+    }
+
+    @Test
+    public void records_the_sends_resolutions_and_overflows() throws Exception {
+        final List<RecordedEvent> recorded;
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "PacketFlush");
+            recording.enable(PREFIX + "SlowSend").withThreshold(Duration.ZERO);
+            recording.enable(PREFIX + "AddressResolution");
+            recording.enable(PREFIX + "QueueOverflow");
+            recording.start();
+
+            final UdpProtocol protocol = new UdpProtocol(new Callable<InetSocketAddress>() {
+                @Override
+                public InetSocketAddress call() {
+                    return new InetSocketAddress("localhost", 17260);
+                }
+            }, null);
+            protocol.send("my.count:1|c");
+            protocol.send("my.count:2|c");
+            protocol.flush();
+            protocol.close();
+            ClientEvents.INSTANCE.queueOverflow(Lane.EVENT, Lane.PRIORITY_CAPACITY);
+
+            recording.stop();
+            final Path dump = Files.createTempFile("statsd", ".jfr");
+            try {
+                recording.dump(dump);
+                recorded = RecordingFile.readAllEvents(dump);
+            } finally {
+                Files.delete(dump);
+            }
+        }
+
+        final List<String> names = new ArrayList<>();
+        for (RecordedEvent event : recorded) {
+            final String name = event.getEventType().getName();
+            names.add(name);
+            if (name.equals(PREFIX + "PacketFlush")) {
+                assertEquals(25, event.getInt("bytes"));
+                assertEquals(2, event.getInt("metrics"));
+            } else if (name.equals(PREFIX + "SlowSend")) {
+                assertEquals(25, event.getInt("bytes"));
+            } else if (name.equals(PREFIX + "AddressResolution")) {
+                assertEquals(null, event.getString("previousAddress"));
+            } else if (name.equals(PREFIX + "QueueOverflow")) {
+                assertEquals("events", event.getString("lane"));
+                assertEquals(Lane.PRIORITY_CAPACITY, event.getInt("queueCapacity"));
+            }
+        }
+        assertThat(names, hasItems(PREFIX + "PacketFlush", PREFIX + "SlowSend",
+            PREFIX + "AddressResolution", PREFIX + "QueueOverflow"));
+    }
+}